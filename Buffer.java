@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * One open document, shown in its own tab.
+ *
+ * A buffer owns everything that belongs to its document: the file it was
+ * opened from, its undo history and edit journal, any load or save in
+ * progress, and the caret and scroll position to restore when its tab is
+ * shown again. Notepad shows the active buffer's document in the shared text
+ * area. To stay within the memory budget, BufferTabs can evict an inactive
+ * buffer: unsaved text is spilled to a temporary file and dropped once that
+ * is written, and a buffer that matches its file simply drops its text.
+ * Either way it is reloaded when its tab is selected. If the spill cannot be
+ * written the text stays loaded, and if it cannot be read back the buffer
+ * stays evicted; the text is never replaced by an empty document.
+ */
+public class Buffer {
+    // Background file work shared by all buffers: journal writes and spilling
+    public static final ExecutorService IO = Executors.newFixedThreadPool(2, task -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(task);
+        thread.setName("Buffer I/O");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Notepad notepad;
+    // The text, or null while evicted
+    protected Document doc;
+    protected String fileDirectory, fileName;
+    protected final UndoHistory undoManager = new UndoHistory();
+    protected final EditJournal journal = new EditJournal();
+    protected FileLoader fileLoader;
+    protected FileSaver fileSaver;
+    protected LargeFileBar largeFileBar;
+
+    // Where the caret, selection and view were when the tab was last left
+    protected int dot, mark, viewY;
+    protected long lastUsed;
+
+    // While evicted with unsaved text, or spilling it: the file it goes to, and the write
+    private Path spill;
+    private Future<?> spillWrite;
+    private Object charset, lineSeparator;
+    // Whether spilled text is being read back
+    private boolean reloading;
+
+    public Buffer(Notepad notepad) {
+        this.notepad = notepad;
+        setDocument(new EditorDocument());
+    }
+
+    // Method to give the buffer a new document, starting its undo history and journal over
+    protected void setDocument(Document next) {
+        if (doc != null)
+            doc.removeUndoableEditListener(undoManager);
+        if (doc instanceof LargeFileDocument && next != doc)
+            ((LargeFileDocument) doc).close();
+        doc = next;
+        doc.addUndoableEditListener(undoManager);
+        undoManager.discardAllEdits();
+        journal.attach(doc, null, null);
+        largeFileBar = doc instanceof LargeFileDocument ? new LargeFileBar(notepad, (LargeFileDocument) doc) : null;
+        if (notepad.buffer == this)
+            notepad.showBuffer(this);
+    }
+
+    public File getFile() {
+        return fileName != null ? new File(fileDirectory, fileName) : null;
+    }
+
+    // Method to let go of the file after its text failed to load in full, so saving asks for a name rather than overwriting it
+    protected void forgetFile() {
+        fileDirectory = fileName = null;
+        if (notepad.buffer == this)
+            notepad.updateTitle();
+        else
+            notepad.tabs.refresh(this);
+    }
+
+    // Name for the tab and window title
+    public String getTitle() {
+        String title = fileName != null ? fileName : "New";
+        return doc instanceof LargeFileDocument ? title + " [read-only]" : title;
+    }
+
+    // Whether this is an untouched new document that opening a file can reuse
+    public boolean isUnused() {
+        return fileName == null && doc != null && doc.getLength() == 0 && !isLoading()
+                && !undoManager.canUndo();
+    }
+
+    // Whether text is still being read in, during which the buffer is read-only
+    public boolean isLoading() {
+        return fileLoader != null || reloading;
+    }
+
+    public boolean isEvicted() {
+        return doc == null;
+    }
+
+    // Whether the text is being spilled, after which it is let go of
+    public boolean isSpilling() {
+        return doc != null && spill != null;
+    }
+
+    // Whether the text has changes that its file does not
+    public boolean isModified() {
+        return journal.isDirty() || (fileName == null && (doc == null || doc.getLength() > 0));
+    }
+
+    // Estimated heap held by the text and its undo history; mapped large files cost next to nothing
+    public long getMemoryUsage() {
+        if (!(doc instanceof EditorDocument))
+            return 0;
+        return 2L * doc.getLength() + undoManager.getMemoryUsage();
+    }
+
+    // Method to let go of the text, spilling it to a temporary file first if the file on disk lacks it
+    public void evict() {
+        if (!(doc instanceof EditorDocument) || isLoading() || fileSaver != null || spill != null)
+            return;
+        if (fileName == null && doc.getLength() == 0)
+            return; // Nothing to free
+        EditorDocument text = (EditorDocument) doc;
+        charset = text.getProperty(FileLoader.CHARSET_PROPERTY);
+        lineSeparator = text.getProperty(DefaultEditorKit.EndOfLineStringProperty);
+        if (!isModified()) {
+            drop(text);
+            return;
+        }
+        Path target;
+        try {
+            target = Files.createTempFile("notepad-buffer", ".tmp");
+        } catch (IOException e) {
+            System.err.println("Error spilling buffer!");
+            return;
+        }
+        target.toFile().deleteOnExit();
+        PieceTableContent.Snapshot snapshot = text.snapshot();
+        long shown = lastUsed;
+        spill = target;
+        spillWrite = IO.submit(() -> {
+            boolean written = false;
+            try {
+                writeChars(target, snapshot);
+                written = true;
+            } catch (IOException e) {
+                System.err.println("Error spilling buffer!");
+            }
+            boolean done = written;
+            SwingUtilities.invokeLater(() -> spilled(target, text, shown, done));
+        });
+    }
+
+    // Method run once a spill is over: let go of the text if it was written and the buffer has not been shown since
+    private void spilled(Path target, EditorDocument text, long shown, boolean written) {
+        if (spill != target || doc != text)
+            return; // Closed, which deletes the spill
+        if (written && lastUsed == shown && notepad.buffer != this) {
+            drop(text);
+            return;
+        }
+        // Keep the text, since the spill failed or may be missing edits made since
+        spill = null;
+        spillWrite = null;
+        IO.execute(() -> {
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException e) {
+                System.err.println("Error deleting spilled buffer!");
+            }
+        });
+    }
+
+    // Method to let go of the text and its undo history, which the journal resumes from on reload
+    private void drop(EditorDocument text) {
+        text.removeUndoableEditListener(undoManager);
+        undoManager.discardAllEdits();
+        journal.suspend();
+        doc = null;
+    }
+
+    // Method to bring back the text of an evicted buffer; it shows up once read
+    public void reload() {
+        EditorDocument text = new EditorDocument();
+        text.putProperty(FileLoader.CHARSET_PROPERTY, charset);
+        text.putProperty(DefaultEditorKit.EndOfLineStringProperty, lineSeparator);
+        doc = text;
+        if (spill == null) {
+            // The file holds the text, so load it like any other
+            text.addUndoableEditListener(undoManager);
+            if (notepad.buffer == this)
+                notepad.showBuffer(this);
+            int savedDot = dot, savedMark = mark, savedViewY = viewY;
+            FileLoader loader = new FileLoader(notepad, getFile(),
+                    charset instanceof Charset ? (Charset) charset : Charset.defaultCharset());
+            loader.whenLoaded(() -> {
+                dot = savedDot;
+                mark = savedMark;
+                viewY = savedViewY;
+                restoreCaret(text);
+            });
+            loader.start();
+            return;
+        }
+        Path source = spill;
+        Future<?> written = spillWrite;
+        spill = null;
+        spillWrite = null;
+        reloading = true;
+        if (notepad.buffer == this)
+            notepad.showBuffer(this);
+        IO.execute(() -> {
+            String content;
+            try {
+                content = readChars(source);
+            } catch (IOException e) {
+                System.err.println("Error reloading buffer!");
+                SwingUtilities.invokeLater(() -> reloadFailed(text, source, written, e));
+                return;
+            }
+            try {
+                Files.deleteIfExists(source);
+            } catch (IOException e) {
+                System.err.println("Error deleting spilled buffer!"); // Left for deleteOnExit
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (doc != text)
+                    return; // Closed in the meantime
+                try {
+                    text.insertString(0, content, null);
+                } catch (BadLocationException e) {
+                    System.err.println("Error reloading buffer!");
+                }
+                // Added after the insert, so the reload is neither undoable nor journaled again
+                text.addUndoableEditListener(undoManager);
+                journal.resume(text);
+                reloading = false;
+                restoreCaret(text);
+            });
+        });
+    }
+
+    // Method to leave the buffer evicted when its spill cannot be read, so that it can be tried again
+    private void reloadFailed(EditorDocument text, Path source, Future<?> written, IOException cause) {
+        if (doc != text)
+            return; // Closed in the meantime; deleteOnExit has the spill
+        doc = null;
+        spill = source;
+        spillWrite = written;
+        reloading = false;
+        notepad.statusScheduler.setActivity("Error reloading " + getTitle());
+        JOptionPane.showMessageDialog(notepad, "Could not read back the unsaved text of " + getTitle() + ":\n"
+                + cause + "\nSelect its tab again to retry.", "Reload", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Method to write text as raw UTF-16, which unlike an encoder keeps unpaired surrogates
+    private static void writeChars(Path file, PieceTableContent.Snapshot text) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+        CharBuffer chars = bytes.asCharBuffer();
+        Segment segment = new Segment();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int pos = 0; pos < text.length(); pos += segment.count) {
+                text.getChars(pos, Math.min(chars.capacity(), text.length() - pos), segment);
+                chars.clear();
+                chars.put(segment.array, segment.offset, segment.count);
+                bytes.clear().limit(2 * segment.count);
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            }
+        }
+    }
+
+    private static String readChars(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).asCharBuffer().toString();
+    }
+
+    private void restoreCaret(Document text) {
+        int length = text.getLength();
+        dot = Math.min(dot, length);
+        mark = Math.min(mark, length);
+        if (notepad.buffer == this && doc == text)
+            notepad.showBuffer(this);
+    }
+
+    // Method to release the buffer's resources when its tab is closed
+    public void close() {
+        if (fileLoader != null)
+            fileLoader.cancel(true);
+        fileLoader = null;
+        if (doc instanceof LargeFileDocument)
+            ((LargeFileDocument) doc).close();
+        doc = null;
+        journal.close(true); // Saved, or its changes thrown away when asked
+        if (spill != null) {
+            Path source = spill;
+            Future<?> written = spillWrite;
+            IO.execute(() -> {
+                try {
+                    written.get(); // Not before the write is done, or it would leave the file behind
+                    Files.deleteIfExists(source);
+                } catch (Exception e) {
+                    System.err.println("Error deleting spilled buffer!");
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.awt.Dimension;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+
+/**
+ * Tab strip above the text area, one tab per open Buffer.
+ *
+ * The tabs have no content of their own: selecting one shows its buffer in
+ * Notepad's text area. The strip also keeps all buffers together within one
+ * memory budget. Whenever the text and undo history of the loaded buffers add
+ * up to more than BUDGET, the least recently shown inactive buffers are
+ * evicted until they fit again.
+ */
+public class BufferTabs extends JTabbedPane {
+    // Memory the loaded buffers may hold between them
+    public static final long BUDGET = Long.getLong("notepad.bufferBudget", Runtime.getRuntime().maxMemory() / 4);
+
+    private final Notepad notepad;
+    private final List<Buffer> buffers = new ArrayList<>();
+    // Set while the selection follows Notepad, so it is not shown twice
+    private boolean selecting;
+
+    public BufferTabs(Notepad notepad) {
+        super(TOP, SCROLL_TAB_LAYOUT);
+        this.notepad = notepad;
+        addChangeListener(e -> {
+            int index = getSelectedIndex();
+            if (!selecting && index >= 0 && buffers.get(index) != notepad.buffer)
+                notepad.showBuffer(buffers.get(index));
+        });
+    }
+
+    public List<Buffer> getBuffers() {
+        return Collections.unmodifiableList(buffers);
+    }
+
+    // Method to add a tab for buffer and show it
+    public void add(Buffer buffer) {
+        buffers.add(buffer);
+        // An empty placeholder, since the text area is shared
+        JComponent placeholder = new JPanel();
+        placeholder.setPreferredSize(new Dimension(0, 0));
+        selecting = true;
+        addTab(buffer.getTitle(), placeholder);
+        selecting = false;
+        notepad.showBuffer(buffer);
+    }
+
+    // Method to select buffer's tab without showing it again
+    public void select(Buffer buffer) {
+        int index = buffers.indexOf(buffer);
+        if (index < 0 || index == getSelectedIndex())
+            return;
+        selecting = true;
+        setSelectedIndex(index);
+        selecting = false;
+    }
+
+    // Method to update buffer's tab after its file or state changed
+    public void refresh(Buffer buffer) {
+        int index = buffers.indexOf(buffer);
+        if (index < 0)
+            return;
+        setTitleAt(index, buffer.getTitle());
+        File file = buffer.getFile();
+        setToolTipTextAt(index, file != null ? file.getPath() : null);
+    }
+
+    // Method to return the buffer already showing file, or null
+    public Buffer find(File file) {
+        File target = file.getAbsoluteFile();
+        for (Buffer buffer : buffers) {
+            if (target.equals(buffer.getFile() != null ? buffer.getFile().getAbsoluteFile() : null))
+                return buffer;
+        }
+        return null;
+    }
+
+    // Method to close buffer's tab, asking first if it has unsaved changes
+    public void close(Buffer buffer) {
+        if (buffer.isModified()) {
+            int answer = JOptionPane.showConfirmDialog(notepad,
+                    "Close " + buffer.getTitle() + " without saving the changes?", "Close Tab",
+                    JOptionPane.YES_NO_OPTION);
+            if (answer != JOptionPane.YES_OPTION)
+                return;
+        }
+        int index = buffers.indexOf(buffer);
+        buffers.remove(index);
+        selecting = true;
+        removeTabAt(index);
+        selecting = false;
+        buffer.close();
+        if (buffers.isEmpty())
+            add(new Buffer(notepad)); // Always keep one document open
+        else if (notepad.buffer == buffer)
+            notepad.showBuffer(buffers.get(Math.min(index, buffers.size() - 1)));
+    }
+
+    // Method to evict the least recently shown inactive buffers while the loaded ones use more than BUDGET
+    public void enforceBudget() {
+        long used = 0;
+        List<Buffer> candidates = new ArrayList<>();
+        for (Buffer buffer : buffers) {
+            used += buffer.getMemoryUsage();
+            if (buffer != notepad.buffer && buffer.getMemoryUsage() > 0)
+                candidates.add(buffer);
+        }
+        if (used <= BUDGET)
+            return;
+        candidates.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        for (Buffer buffer : candidates) {
+            if (used <= BUDGET)
+                break;
+            long freed = buffer.getMemoryUsage();
+            buffer.evict();
+            if (buffer.isEvicted() || buffer.isSpilling())
+                used -= freed; // A spilling buffer lets go of its text once the spill is written
+        }
+    }
+}
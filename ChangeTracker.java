@@ -0,0 +1,223 @@
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+
+/**
+ * Tracks which parts of a document changed since it was last loaded or saved,
+ * so that a save can rewrite only those bytes.
+ *
+ * Changes are kept as a sorted list of ranges in current document offsets,
+ * each with the net number of characters it gained or lost. Text outside the
+ * ranges is still exactly what the file holds. If no range changed length, and
+ * every character maps to a fixed number of bytes, the ranges can be patched in
+ * place. Otherwise everything from the first range on is rewritten. A patch
+ * is not atomic the way a full save is, so it is only used for files of at
+ * least DELTA_THRESHOLD bytes that have not changed on disk. All methods must
+ * be called on the EDT.
+ */
+public class ChangeTracker implements DocumentListener {
+    // Files smaller than this (in bytes) are always saved with a full, atomic rewrite
+    public static final long DELTA_THRESHOLD = Long.getLong("notepad.deltaSaveThreshold", 8L * 1024 * 1024);
+
+    // Above this many ranges, they are merged into one
+    private static final int MAX_RANGES = 64;
+
+    private final Document doc;
+    private final ArrayList<Range> ranges = new ArrayList<>();
+
+    // The file the unchanged text matches, or null if it matches no file
+    private File file;
+    private long fileLength, lastModified;
+    private Charset charset;
+    private String lineSeparator;
+    // Whether the file's bytes map one to one to characters and line breaks
+    private boolean linear;
+    // Bumped whenever the baseline is replaced, so a stale save cannot overwrite a newer one
+    private int generation;
+
+    public ChangeTracker(Document doc) {
+        this.doc = doc;
+    }
+
+    // Method to record that the document text now matches file exactly (null if it matches no file)
+    public void markClean(File file, Charset charset, String lineSeparator, boolean linear) {
+        ranges.clear();
+        generation++;
+        this.file = file;
+        this.charset = charset;
+        this.lineSeparator = lineSeparator;
+        this.linear = linear;
+        fileLength = file != null ? file.length() : 0;
+        lastModified = file != null ? file.lastModified() : 0;
+    }
+
+    // Method to plan how to save text to target; the plan is a full rewrite when patching is not safe
+    public Patch beginSave(File target, PieceTableContent.Snapshot text, Charset charset, String lineSeparator) {
+        Patch patch = plan(target, text, charset, lineSeparator);
+        if (patch == null)
+            patch = new Patch(null, null, null, false);
+        patch.generation = generation;
+        // Changes made while saving are relative to the text being saved
+        ranges.clear();
+        return patch;
+    }
+
+    // Method to take the saved text as the new baseline, or forget the baseline if the save failed
+    public void endSave(Patch patch, File target, Charset charset, String lineSeparator, boolean linear,
+            boolean saved) {
+        if (patch.generation != generation)
+            return; // The document was reloaded while saving
+        if (!saved) {
+            file = null; // What is on disk is unknown, so the next save rewrites everything
+            return;
+        }
+        file = target;
+        this.charset = charset;
+        this.lineSeparator = lineSeparator;
+        this.linear = linear;
+        fileLength = target.length();
+        lastModified = target.lastModified();
+    }
+
+    private Patch plan(File target, PieceTableContent.Snapshot text, Charset charset, String lineSeparator) {
+        if (file == null || !file.equals(target) || !linear || fileLength < DELTA_THRESHOLD)
+            return null;
+        if (!charset.equals(this.charset) || !lineSeparator.equals(this.lineSeparator))
+            return null;
+        if (target.length() != fileLength || target.lastModified() != lastModified)
+            return null; // Changed on disk since it was loaded
+        if (ranges.isEmpty())
+            return new Patch(new int[0], new int[0], new long[0], false);
+
+        boolean singleByte = charset.newEncoder().maxBytesPerChar() == 1.0f;
+        if (!singleByte && !charset.equals(StandardCharsets.UTF_8))
+            return null;
+
+        // Same length, one byte per character: write each range where it was
+        if (lineSeparator.length() == 1 && allSameLength()) {
+            int n = ranges.size();
+            int[] starts = new int[n], ends = new int[n];
+            long[] positions = new long[n];
+            long bytes = 0;
+            boolean fits = true;
+            for (int i = 0; i < n && fits; i++) {
+                Range r = ranges.get(i);
+                starts[i] = r.start;
+                ends[i] = r.end;
+                positions[i] = r.start;
+                bytes += r.end - r.start;
+                fits = singleByte || isAscii(text, r.start, r.end);
+            }
+            if (fits && bytes <= fileLength / 2)
+                return new Patch(starts, ends, positions, false);
+        }
+
+        // Otherwise rewrite everything from the first change on, as long as that is the smaller part
+        int start = ranges.get(0).start;
+        long lineBreaks = doc.getDefaultRootElement().getElementIndex(start);
+        long position = start + lineBreaks * (lineSeparator.length() - 1);
+        if (position < fileLength / 2)
+            return null;
+        return new Patch(new int[] { start }, new int[] { text.length() }, new long[] { position }, true);
+    }
+
+    private boolean allSameLength() {
+        for (Range r : ranges) {
+            if (r.delta != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(PieceTableContent.Snapshot text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        edit(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        edit(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    // Method to record that 'removed' characters at offset were replaced by 'inserted' ones
+    private void edit(int offset, int removed, int inserted) {
+        int shift = inserted - removed;
+        int start = offset, endBefore = offset + removed, delta = shift;
+        // Ranges touching the edit are merged into it, ranges after it move
+        int i = 0;
+        while (i < ranges.size() && ranges.get(i).end < offset)
+            i++;
+        int first = i;
+        while (i < ranges.size() && ranges.get(i).start <= offset + removed) {
+            Range r = ranges.get(i++);
+            start = Math.min(start, r.start);
+            endBefore = Math.max(endBefore, r.end);
+            delta += r.delta;
+        }
+        ranges.subList(first, i).clear();
+        ranges.add(first, new Range(start, endBefore + shift, delta));
+        for (int j = first + 1; j < ranges.size(); j++) {
+            Range r = ranges.get(j);
+            r.start += shift;
+            r.end += shift;
+        }
+        if (ranges.size() > MAX_RANGES) {
+            Range all = new Range(ranges.get(0).start, ranges.get(ranges.size() - 1).end, 0);
+            for (Range r : ranges)
+                all.delta += r.delta;
+            ranges.clear();
+            ranges.add(all);
+        }
+    }
+
+    private static final class Range {
+        int start, end;
+        // Characters gained (or lost, if negative) inside this range
+        int delta;
+
+        Range(int start, int end, int delta) {
+            this.start = start;
+            this.end = end;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * Character ranges of the saved text to write at given byte positions.
+     * If truncate is set there is one range, running to the end of the text,
+     * and the file is cut off after it. A full patch rewrites the whole file.
+     */
+    public static final class Patch {
+        final int[] starts, ends;
+        final long[] positions;
+        final boolean truncate;
+        private int generation;
+
+        private Patch(int[] starts, int[] ends, long[] positions, boolean truncate) {
+            this.starts = starts;
+            this.ends = ends;
+            this.positions = positions;
+            this.truncate = truncate;
+        }
+
+        public boolean isFull() {
+            return starts == null;
+        }
+    }
+}
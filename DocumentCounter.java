@@ -0,0 +1,198 @@
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.DocumentFilter;
+import javax.swing.text.Segment;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Keeps the character, word and line totals of a document up to date.
+ *
+ * A word starts at every non-whitespace character that follows whitespace (or
+ * the start of the document), so an edit can only change the word starts that
+ * lie inside the edited range plus the one character right after it. Each
+ * insert or remove therefore rescans just that damaged region instead of the
+ * whole text. Removed text is gone by the time a DocumentListener hears about
+ * it, so a DocumentFilter counts the word starts of the range just before it
+ * is removed.
+ */
+public class DocumentCounter implements DocumentListener {
+    private Document document;
+    private RemovalFilter filter;
+    private final Segment segment = new Segment();
+
+    private int wordCount;
+    // Word starts counted by the filter for the range that is about to be removed
+    private int pendingOffset = -1, pendingLength, pendingWordStarts;
+
+    // Method to attach the counter to a document, replacing any previous one
+    public void install(Document document) {
+        uninstall();
+        this.document = document;
+        if (document instanceof AbstractDocument) {
+            AbstractDocument doc = (AbstractDocument) document;
+            filter = new RemovalFilter(doc.getDocumentFilter());
+            doc.setDocumentFilter(filter);
+        }
+        document.addDocumentListener(this);
+        recount();
+    }
+
+    // Method to detach the counter from its current document
+    public void uninstall() {
+        if (document == null)
+            return;
+        document.removeDocumentListener(this);
+        if (filter != null && document instanceof AbstractDocument) {
+            AbstractDocument doc = (AbstractDocument) document;
+            if (doc.getDocumentFilter() == filter)
+                doc.setDocumentFilter(filter.next);
+        }
+        filter = null;
+        document = null;
+    }
+
+    public int getCharCount() {
+        return document == null ? 0 : document.getLength();
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getLineCount() {
+        return document == null ? 0 : document.getDefaultRootElement().getElementCount();
+    }
+
+    // Method to recount the whole document from scratch
+    public void recount() {
+        pendingOffset = -1;
+        try {
+            wordCount = document == null ? 0 : countWordStarts(0, document.getLength());
+        } catch (BadLocationException e) {
+            wordCount = 0;
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        int offset = e.getOffset();
+        int end = offset + e.getLength();
+        try {
+            // Before the insert, the character now at 'end' followed the one at offset - 1
+            int before = end < document.getLength() && isWordStart(charAt(end), offset) ? 1 : 0;
+            int after = countWordStarts(offset, Math.min(end + 1, document.getLength()));
+            wordCount += after - before;
+        } catch (BadLocationException ex) {
+            recount();
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        int offset = e.getOffset();
+        if (pendingOffset != offset || pendingLength != e.getLength()) {
+            // The removal did not go through our filter, so the old text is unknown
+            recount();
+            return;
+        }
+        pendingOffset = -1;
+        try {
+            int after = countWordStarts(offset, Math.min(offset + 1, document.getLength()));
+            wordCount += after - pendingWordStarts;
+        } catch (BadLocationException ex) {
+            recount();
+        }
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attribute changes do not affect the counts
+    }
+
+    // Method to capture the word starts of a range that is about to be removed
+    private void beforeRemove(int offset, int length) {
+        try {
+            pendingWordStarts = countWordStarts(offset, Math.min(offset + length + 1, document.getLength()));
+            pendingOffset = offset;
+            pendingLength = length;
+        } catch (BadLocationException e) {
+            pendingOffset = -1;
+        }
+    }
+
+    // Method to count the word starts in [from, to), looking back one character for context
+    private int countWordStarts(int from, int to) throws BadLocationException {
+        int count = 0;
+        boolean prevSpace = from == 0 || isWhitespace(charAt(from - 1));
+        segment.setPartialReturn(true);
+        int offset = from;
+        while (offset < to) {
+            document.getText(offset, to - offset, segment);
+            char[] array = segment.array;
+            for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                boolean space = isWhitespace(array[i]);
+                if (!space && prevSpace)
+                    count++;
+                prevSpace = space;
+            }
+            offset += segment.count;
+        }
+        return count;
+    }
+
+    private boolean isWordStart(char c, int offset) throws BadLocationException {
+        return !isWhitespace(c) && (offset == 0 || isWhitespace(charAt(offset - 1)));
+    }
+
+    private char charAt(int offset) throws BadLocationException {
+        segment.setPartialReturn(true);
+        document.getText(offset, 1, segment);
+        return segment.array[segment.offset];
+    }
+
+    // Same character class as the "\\s" regex the status bar used to split on
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    // Filter that records the word starts of removed text, then defers to the previous filter
+    private class RemovalFilter extends DocumentFilter {
+        private final DocumentFilter next;
+
+        RemovalFilter(DocumentFilter next) {
+            this.next = next;
+        }
+
+        @Override
+        public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+            beforeRemove(offset, length);
+            if (next != null)
+                next.remove(fb, offset, length);
+            else
+                fb.remove(offset, length);
+        }
+
+        @Override
+        public void insertString(FilterBypass fb, int offset, String text, AttributeSet attrs)
+                throws BadLocationException {
+            if (next != null)
+                next.insertString(fb, offset, text, attrs);
+            else
+                fb.insertString(offset, text, attrs);
+        }
+
+        @Override
+        public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+                throws BadLocationException {
+            if (length > 0)
+                beforeRemove(offset, length);
+            if (next != null)
+                next.replace(fb, offset, length, text, attrs);
+            else
+                fb.replace(offset, length, text, attrs);
+        }
+    }
+}
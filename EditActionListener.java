@@ -16,13 +16,13 @@ public class EditActionListener implements ActionListener {
         // Switch statement to handle different edit actions
         switch (event.getActionCommand()) {
             case "Undo":
-                if (notepad.undoManager.canUndo()) // Check if undo is possible
-                    notepad.undoManager.undo(); // Perform undo
+                if (notepad.buffer.undoManager.canUndo()) // Check if undo is possible
+                    undoOrRedo(false);
                 break;
 
             case "Redo":
-                if (notepad.undoManager.canRedo()) // Check if redo is possible
-                    notepad.undoManager.redo(); // Perform redo
+                if (notepad.buffer.undoManager.canRedo()) // Check if redo is possible
+                    undoOrRedo(true);
                 break;
 
             case "Cut":
@@ -53,17 +53,41 @@ public class EditActionListener implements ActionListener {
                 break;
 
             case "Find":
-                FindReplaceDialog findDialog = new FindReplaceDialog(notepad, notepad.textarea);
-                findDialog.setVisible(true);
+                findReplaceDialog().open(false);
                 break;
 
             case "Replace":
-                FindReplaceDialog replaceDialog = new FindReplaceDialog(notepad, notepad.textarea);
-                replaceDialog.setVisible(true);
+                findReplaceDialog().open(true);
+                break;
+
+            case "Find in Files":
+                FindInFilesDialog filesDialog = new FindInFilesDialog(notepad);
+                filesDialog.setVisible(true);
                 break;
 
             default:
                 break;
         }
     }
+
+    // Method to get the window's Find and Replace dialog, making it if there is none open
+    private FindReplaceDialog findReplaceDialog() {
+        if (notepad.findReplaceDialog == null || !notepad.findReplaceDialog.isDisplayable())
+            notepad.findReplaceDialog = new FindReplaceDialog(notepad, notepad.textarea);
+        return notepad.findReplaceDialog;
+    }
+
+    // Method to undo or redo one step, recording it for Flight Recorder
+    private void undoOrRedo(boolean redo) {
+        UndoHistory history = notepad.buffer.undoManager;
+        EditorEvents.Undo event = new EditorEvents.Undo();
+        event.redo = redo;
+        event.edit = redo ? history.getRedoPresentationName() : history.getUndoPresentationName();
+        event.begin();
+        if (redo)
+            history.redo();
+        else
+            history.undo();
+        event.commit();
+    }
 }
@@ -0,0 +1,483 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import javax.swing.JOptionPane;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Write-ahead journal of the edits made to the document, for getting them back
+ * after a crash.
+ *
+ * The journal names the file the text was loaded from or last saved to, then
+ * lists every edit since as offset, removed length and inserted text. The EDT
+ * only queues records. A task on the shared buffer I/O threads writes whatever
+ * has queued up with one write and one force, so a slow disk delays the
+ * journal, never typing.
+ * Every record carries a checksum and replay stops at the first torn one.
+ * After a save the journal is cut back to the saved file plus the edits made
+ * while saving.
+ *
+ * On startup, journals left by a session that crashed or closed with unsaved
+ * changes are offered for recovery. Closing a tab without saving deletes its
+ * journal, since those changes were thrown away on purpose. The file is loaded as usual and the edits
+ * are applied on top, where they can be undone like any other edit.
+ */
+public class EditJournal implements DocumentListener {
+    private static final Path DIRECTORY = Paths.get(System.getProperty("notepad.journalDir",
+            System.getProperty("user.home") + File.separator + ".notepad" + File.separator + "journal"));
+    private static final String SUFFIX = ".journal";
+    private static final byte HEADER = 'H', EDIT = 'E';
+
+    // Records queued for writing, and whether a drain task is running, guarded by lock
+    private final Object lock = new Object();
+    private ArrayList<Record> pending = new ArrayList<>();
+    private boolean draining;
+
+    private Path path;
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    // The document being journaled, and the state below, are only touched on the EDT
+    private EditorDocument doc;
+    // Edits made while a save is running, which the compacted journal must keep
+    private ArrayList<Record> sinceSave;
+    // Whether there are edits the file on disk does not have
+    private boolean dirty;
+
+    public EditJournal() {
+        try {
+            Files.createDirectories(DIRECTORY);
+            path = DIRECTORY.resolve(ProcessHandle.current().pid() + "-" + System.currentTimeMillis() + SUFFIX);
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            // Held for the whole session, so another instance does not take this journal for a leftover
+            fileLock = channel.tryLock();
+        } catch (IOException e) {
+            System.err.println("Error creating edit journal!");
+            channel = null;
+        }
+    }
+
+    // Method to journal doc from now on, starting from file (or, if null, from the text doc holds now)
+    public void attach(Document document, File file, Charset charset) {
+        if (doc != null)
+            doc.removeDocumentListener(this);
+        doc = document instanceof EditorDocument ? (EditorDocument) document : null;
+        sinceSave = null;
+        dirty = false;
+        if (doc == null || channel == null)
+            return;
+        doc.addDocumentListener(this);
+        ArrayList<Record> records = new ArrayList<>();
+        records.add(new Header(file, charset));
+        if (file == null && doc.getLength() > 0)
+            records.add(new Edit(0, 0, doc.snapshot()));
+        enqueue(records);
+    }
+
+    // Method to stop journaling until the next attach, for example while a file loads
+    public void detach() {
+        attach(null, null, null);
+    }
+
+    // Method to stop listening to the document without forgetting its edits, while its buffer is evicted
+    public void suspend() {
+        if (doc != null)
+            doc.removeDocumentListener(this);
+        doc = null;
+    }
+
+    // Method to go on journaling a reloaded copy of the suspended document
+    public void resume(EditorDocument document) {
+        doc = document;
+        doc.addDocumentListener(this);
+    }
+
+    // Whether the journal holds edits the file on disk does not have
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    // Method to note that a snapshot of document is being saved
+    public void beginSave(EditorDocument document) {
+        if (document == doc)
+            sinceSave = new ArrayList<>();
+    }
+
+    // Method to compact the journal to the saved file once a save has succeeded
+    public void endSave(EditorDocument document, File file, Charset charset, boolean saved) {
+        if (document != doc || sinceSave == null)
+            return; // Another document was attached in the meantime
+        if (saved && channel != null) {
+            ArrayList<Record> records = new ArrayList<>();
+            records.add(new Header(file, charset));
+            records.addAll(sinceSave);
+            enqueue(records);
+            dirty = !sinceSave.isEmpty();
+        }
+        sinceSave = null;
+    }
+
+    // Method to write out what is queued and stop; the journal is kept only if it holds unsaved edits
+    public void close() {
+        close(false);
+    }
+
+    // Method to stop journaling, deleting the journal if discard is set because its edits were thrown away
+    public void close(boolean discard) {
+        if (doc != null)
+            doc.removeDocumentListener(this);
+        doc = null;
+        if (channel == null)
+            return;
+        try {
+            synchronized (lock) {
+                while (draining)
+                    lock.wait();
+            }
+            if (fileLock != null)
+                fileLock.release();
+            channel.close();
+            if (discard || !dirty)
+                Files.deleteIfExists(path);
+        } catch (InterruptedException | IOException e) {
+            System.err.println("Error closing edit journal!");
+        }
+        channel = null;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        record(new Edit(e.getOffset(), 0, doc.snapshot(e.getOffset(), e.getLength())));
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        record(new Edit(e.getOffset(), e.getLength(), null));
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    private void record(Edit edit) {
+        dirty = true;
+        if (sinceSave != null)
+            sinceSave.add(edit);
+        enqueue(List.of(edit));
+    }
+
+    private void enqueue(List<Record> records) {
+        if (channel == null)
+            return;
+        synchronized (lock) {
+            pending.addAll(records);
+            if (draining)
+                return; // The running task picks them up
+            draining = true;
+        }
+        Buffer.IO.execute(this::drain);
+    }
+
+    // Method run on the I/O threads: each pass writes and forces everything queued since the last one
+    private void drain() {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        CRC32 crc = new CRC32();
+        while (true) {
+            ArrayList<Record> records;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    draining = false;
+                    lock.notifyAll();
+                    return;
+                }
+                records = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                batch.reset();
+                boolean restart = false;
+                for (Record record : records) {
+                    if (record instanceof Header) {
+                        batch.reset(); // Whatever came before belongs to the old baseline
+                        restart = true;
+                    }
+                    payload.reset();
+                    record.write(out);
+                    out.flush();
+                    crc.reset();
+                    crc.update(payload.toByteArray());
+                    DataOutputStream frame = new DataOutputStream(batch);
+                    frame.writeInt(payload.size());
+                    frame.writeInt((int) crc.getValue());
+                    payload.writeTo(batch);
+                }
+                if (restart)
+                    channel.truncate(0);
+                ByteBuffer buf = ByteBuffer.wrap(batch.toByteArray());
+                while (buf.hasRemaining())
+                    channel.write(buf);
+                channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Error writing edit journal!");
+            }
+        }
+    }
+
+    // Method to offer to recover each journal left behind by an earlier session; call on the EDT
+    public static void offerRecovery(Notepad notepad) {
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(DIRECTORY, "*" + SUFFIX)) {
+            for (Path entry : entries)
+                leftovers.add(entry);
+        } catch (IOException e) {
+            return;
+        }
+        // Newest first, each into its own tab; this session's own journals are locked and skipped
+        leftovers.sort((a, b) -> Long.compare(b.toFile().lastModified(), a.toFile().lastModified()));
+        for (Path leftover : leftovers) {
+            Recovery recovery = Recovery.read(leftover);
+            if (recovery == null)
+                continue; // Still in use by another instance
+            if (recovery.edits.isEmpty()) {
+                recovery.delete();
+                continue;
+            }
+            String name = recovery.file != null ? recovery.file.getName() : "an untitled document";
+            String message = "Notepad closed without saving changes to " + name + ".\n";
+            if (recovery.file != null && !recovery.fileUnchanged())
+                message += "The file has changed since, so the recovered text may not be right.\n";
+            int answer = JOptionPane.showConfirmDialog(notepad, message + "Recover them?", "Recover",
+                    JOptionPane.YES_NO_CANCEL_OPTION);
+            if (answer == JOptionPane.YES_OPTION)
+                recovery.restore(notepad);
+            else if (answer == JOptionPane.NO_OPTION)
+                recovery.delete();
+            else
+                recovery.release(); // Ask again next time
+        }
+    }
+
+    private abstract static class Record {
+        abstract void write(DataOutputStream out) throws IOException;
+    }
+
+    // Where the text started: a file as it was on disk, or an empty document
+    private static final class Header extends Record {
+        final String file;
+        final String charset;
+        final long length, lastModified;
+
+        Header(File file, Charset charset) {
+            this.file = file != null ? file.getAbsolutePath() : "";
+            this.charset = charset != null ? charset.name() : Charset.defaultCharset().name();
+            length = file != null ? file.length() : 0;
+            lastModified = file != null ? file.lastModified() : 0;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(HEADER);
+            out.writeUTF(file);
+            out.writeUTF(charset);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+        }
+    }
+
+    private static final class Edit extends Record {
+        final int offset, removed;
+        // Inserted text; a snapshot is only read by the I/O thread
+        final CharSequence text;
+
+        Edit(int offset, int removed, CharSequence text) {
+            this.offset = offset;
+            this.removed = removed;
+            this.text = text;
+        }
+
+        @Override
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(EDIT);
+            out.writeInt(offset);
+            out.writeInt(removed);
+            int n = text != null ? text.length() : 0;
+            out.writeInt(n);
+            if (text instanceof PieceTableContent.Snapshot) {
+                PieceTableContent.Snapshot snapshot = (PieceTableContent.Snapshot) text;
+                Segment segment = new Segment();
+                for (int done = 0; done < n; done += segment.count) {
+                    snapshot.getChars(done, n - done, segment);
+                    for (int i = 0; i < segment.count; i++)
+                        out.writeChar(segment.array[segment.offset + i]);
+                }
+            } else if (text != null) {
+                out.writeChars(text.toString());
+            }
+        }
+    }
+
+    // The contents of a leftover journal, locked so that no other instance recovers it too
+    private static final class Recovery {
+        final Path path;
+        final FileChannel channel;
+        File file;
+        Charset charset;
+        long length, lastModified;
+        final ArrayList<Edit> edits = new ArrayList<>();
+
+        private Recovery(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        // Method to read a journal, or return null if another instance holds it
+        static Recovery read(Path path) {
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (channel.tryLock() == null) {
+                    channel.close();
+                    return null;
+                }
+                Recovery recovery = new Recovery(path, channel);
+                ByteBuffer buf = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+                while (buf.hasRemaining() && channel.read(buf) > 0) {
+                    // fill
+                }
+                buf.flip();
+                recovery.parse(buf);
+                return recovery;
+            } catch (IOException | OverlappingFileLockException e) {
+                try {
+                    if (channel != null)
+                        channel.close();
+                } catch (IOException ignored) {
+                    // Nothing more to do
+                }
+                return null;
+            }
+        }
+
+        // Method to read records up to the end or the first torn one
+        private void parse(ByteBuffer buf) {
+            CRC32 crc = new CRC32();
+            try {
+                while (buf.remaining() >= 8) {
+                    int size = buf.getInt();
+                    int sum = buf.getInt();
+                    if (size < 0 || size > buf.remaining())
+                        return;
+                    ByteBuffer record = buf.slice(buf.position(), size);
+                    crc.reset();
+                    crc.update(record.duplicate());
+                    if ((int) crc.getValue() != sum)
+                        return;
+                    buf.position(buf.position() + size);
+                    byte type = record.get();
+                    if (type == HEADER) {
+                        String name = readUTF(record);
+                        file = name.isEmpty() ? null : new File(name);
+                        charset = Charset.forName(readUTF(record));
+                        length = record.getLong();
+                        lastModified = record.getLong();
+                        edits.clear();
+                    } else if (type == EDIT) {
+                        int offset = record.getInt();
+                        int removed = record.getInt();
+                        char[] text = new char[record.getInt()];
+                        record.asCharBuffer().get(text);
+                        edits.add(new Edit(offset, removed, text.length > 0 ? new String(text) : null));
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // Torn or unreadable record, keep what came before
+            }
+        }
+
+        private static String readUTF(ByteBuffer buf) {
+            byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        boolean fileUnchanged() {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        // Method to load the file the journal starts from and replay the edits onto it
+        void restore(Notepad notepad) {
+            if (file == null) {
+                replay(notepad.openBuffer());
+                return;
+            }
+            if (!file.isFile() || file.length() > LargeFileDocument.THRESHOLD) {
+                JOptionPane.showMessageDialog(notepad, "Cannot read " + file + " to recover the changes.",
+                        "Recover", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            Buffer buffer = notepad.openBuffer();
+            buffer.fileDirectory = file.getAbsoluteFile().getParent() + File.separator;
+            buffer.fileName = file.getName();
+            notepad.updateTitle();
+            FileLoader loader = new FileLoader(notepad, file, charset);
+            loader.whenLoaded(() -> replay(buffer));
+            loader.start();
+        }
+
+        private void replay(Buffer buffer) {
+            Document doc = buffer.doc;
+            try {
+                for (Edit edit : edits) {
+                    if (edit.offset + edit.removed > doc.getLength())
+                        break; // The file no longer matches the journal
+                    if (edit.removed > 0)
+                        doc.remove(edit.offset, edit.removed);
+                    if (edit.text != null)
+                        doc.insertString(edit.offset, edit.text.toString(), null);
+                }
+            } catch (BadLocationException e) {
+                System.err.println("Error recovering edits!");
+            }
+            delete();
+        }
+
+        void release() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing edit journal!");
+            }
+        }
+
+        void delete() {
+            release();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error deleting edit journal!");
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+
+/**
+ * Editable plain text document backed by a PieceTableContent.
+ *
+ * Besides what PlainDocument offers, it can take a snapshot of its text, which
+ * background tasks such as saving read while the user keeps typing, and it
+ * tracks which parts changed since the file was loaded or saved. The text of
+ * each remove is kept for the undo history.
+ */
+public class EditorDocument extends PlainDocument {
+    private final ChangeTracker changeTracker = new ChangeTracker(this);
+    private PieceTableContent.Snapshot removedText;
+
+    public EditorDocument() {
+        super(new PieceTableContent());
+        addDocumentListener(changeTracker);
+    }
+
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
+    }
+
+    // Method to take an immutable snapshot of the whole text; cheap enough to call on the EDT
+    public PieceTableContent.Snapshot snapshot() {
+        return snapshot(0, getLength());
+    }
+
+    // Method to take an immutable snapshot of part of the text
+    public PieceTableContent.Snapshot snapshot(int offset, int length) {
+        readLock();
+        try {
+            return ((PieceTableContent) getContent()).snapshot(offset, length);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    // Text taken out by the most recent remove, for listeners that need it after the fact
+    public PieceTableContent.Snapshot getRemovedText() {
+        return removedText;
+    }
+
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        try {
+            removedText = ((PieceTableContent) getContent()).snapshot(chng.getOffset(), chng.getLength());
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        super.removeUpdate(chng);
+    }
+}
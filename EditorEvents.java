@@ -0,0 +1,168 @@
+import javax.swing.SwingUtilities;
+import javax.swing.text.JTextComponent;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder events for the editor's own operations, so that a
+ * recording shows which of them a GC spike or a long EDT block belongs to.
+ *
+ * The events are only written while a recording that enables them is
+ * running; otherwise creating and committing one costs next to nothing.
+ * resources/notepad.jfc enables them along with the JDK events that matter
+ * most for the editor:
+ *   java -XX:StartFlightRecording:settings=resources/notepad.jfc,filename=notepad.jfr Notepad
+ */
+public final class EditorEvents {
+    private EditorEvents() {
+    }
+
+    @Name("notepad.FileOpen")
+    @Label("File Open")
+    @Category({ "Notepad", "File" })
+    @Description("A file read into a buffer, from the start of the load until it is shown")
+    static class FileOpen extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Charset")
+        String charset;
+
+        @Label("Outcome")
+        String outcome;
+
+        // Method to record the open as ended with outcome
+        void finish(String outcome) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    @Name("notepad.FileSave")
+    @Label("File Save")
+    @Category({ "Notepad", "File" })
+    @Description("A buffer written to its file, from the start of the save until it is done")
+    static class FileSave extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Charset")
+        String charset;
+
+        @Label("Patched In Place")
+        @Description("Whether only the changed bytes were written")
+        boolean patched;
+
+        @Label("Outcome")
+        String outcome;
+
+        // Method to record the save as ended with outcome after writing bytes
+        void finish(String outcome, long bytes) {
+            this.outcome = outcome;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+
+    @Name("notepad.Find")
+    @Label("Find")
+    @Category({ "Notepad", "Search" })
+    @Description("A Find Next, or a regular expression search for all matches")
+    static class Find extends Event {
+        @Label("Query Length")
+        int queryLength;
+
+        @Label("Regular Expression")
+        boolean regex;
+
+        @Label("Matches")
+        @Description("Matches in the whole text, or -1 if they were not counted")
+        int matches;
+
+        @Label("Found")
+        boolean found;
+
+        // Method to record the search as ended, with its matches (-1 if not counted) and whether one was found
+        void finish(int matches, boolean found) {
+            this.matches = matches;
+            this.found = found;
+            commit();
+        }
+    }
+
+    @Name("notepad.ReplaceAll")
+    @Label("Replace All")
+    @Category({ "Notepad", "Search" })
+    @Description("Finding every match in the background and replacing them in one edit")
+    static class ReplaceAll extends Event {
+        @Label("Query Length")
+        int queryLength;
+
+        @Label("Regular Expression")
+        boolean regex;
+
+        @Label("Matches")
+        int matches;
+
+        @Label("Outcome")
+        String outcome;
+
+        // Method to record the replace as ended with outcome after finding matches
+        void finish(String outcome, int matches) {
+            this.outcome = outcome;
+            this.matches = matches;
+            commit();
+        }
+    }
+
+    @Name("notepad.Undo")
+    @Label("Undo")
+    @Category({ "Notepad", "Edit" })
+    @Description("One step of the undo history undone or redone")
+    static class Undo extends Event {
+        @Label("Redo")
+        boolean redo;
+
+        @Label("Edit")
+        String edit;
+    }
+
+    @Name("notepad.Relayout")
+    @Label("Relayout")
+    @Category({ "Notepad", "Format" })
+    @Description("A font or wrapping change, up to the end of the relayout and repaint it causes")
+    static class Relayout extends Event {
+        @Label("Change")
+        String change;
+
+        @Label("Lines")
+        int lines;
+    }
+
+    // Method to make a change that relays out host's whole text, timing it up to the end of the relayout
+    static void relayout(JTextComponent host, String change, Runnable action) {
+        Relayout event = new Relayout();
+        if (!event.isEnabled()) {
+            action.run();
+            return;
+        }
+        event.change = change;
+        event.lines = host.getDocument().getDefaultRootElement().getElementCount();
+        event.begin();
+        action.run();
+        // Queued after the revalidation and repaint the change asked for, so it runs once they are done
+        SwingUtilities.invokeLater(event::commit);
+    }
+}
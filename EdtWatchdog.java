@@ -0,0 +1,133 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Event queue that notices when the EDT spends too long on one event.
+ *
+ * The only work done per event is noting when its dispatch starts and ends.
+ * A background thread looks at that a few times per threshold; once an event
+ * has run longer than the threshold, it samples the EDT's stack every few
+ * milliseconds until the event is done. The samples are written to the
+ * diagnostics directory as a collapsed-stack report, one line per distinct
+ * stack with its root first and its sample count last, which flame graph
+ * tools read as is, and the total time stalled so far goes in the status bar.
+ *
+ * Events dispatched inside another, such as those of a modal dialog, are
+ * timed on their own; the rest of the outer event after them is not timed.
+ */
+public class EdtWatchdog extends EventQueue implements Runnable {
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(Long.getLong("notepad.stallMillis", 500));
+    private static final long SAMPLE_MILLIS = 10;
+    // Where stall reports and other diagnostics are written
+    static final Path DIRECTORY = Paths.get(System.getProperty("notepad.diagnosticsDir",
+            System.getProperty("user.home") + File.separator + ".notepad" + File.separator + "diagnostics"));
+
+    private final Notepad notepad;
+    // When the event being dispatched started, or 0 between events
+    private volatile long dispatchStart;
+    private volatile Thread edt;
+    // Time stalled so far; only touched on the watchdog thread
+    private long totalStall;
+
+    private EdtWatchdog(Notepad notepad) {
+        this.notepad = notepad;
+    }
+
+    // Method to start watching the EDT for the rest of the session
+    public static void install(Notepad notepad) {
+        EdtWatchdog watchdog = new EdtWatchdog(notepad);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(watchdog);
+        Thread thread = new Thread(watchdog, "EDT watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        Thread current = Thread.currentThread();
+        if (edt != current)
+            edt = current; // Changes if the EDT died and was restarted
+        dispatchStart = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            dispatchStart = 0;
+        }
+    }
+
+    @Override
+    public void run() {
+        long tick = TimeUnit.NANOSECONDS.toMillis(THRESHOLD) / 4 + 1;
+        while (true) {
+            try {
+                long start = dispatchStart;
+                if (start != 0 && System.nanoTime() - start >= THRESHOLD)
+                    watch(start);
+                else
+                    Thread.sleep(tick);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Method to sample the EDT's stack until the event that started at start is done, then report the stall
+    private void watch(long start) throws InterruptedException {
+        Thread thread = edt;
+        Map<String, Integer> stacks = new HashMap<>();
+        while (dispatchStart == start) {
+            StackTraceElement[] trace = thread.getStackTrace();
+            if (dispatchStart != start)
+                break; // The event ended while the stack was taken, so this sample may be of the next one
+            stacks.merge(collapse(trace), 1, Integer::sum);
+            Thread.sleep(SAMPLE_MILLIS);
+        }
+        long stall = System.nanoTime() - start;
+        totalStall += stall;
+        Path report = write(stacks, stall);
+        long total = totalStall;
+        SwingUtilities.invokeLater(() -> notepad.statusScheduler.setStalls(total, stall, report));
+    }
+
+    // The frames of trace from the outermost in, separated by semicolons
+    private static String collapse(StackTraceElement[] trace) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = trace.length - 1; i >= 0; i--) {
+            if (sb.length() > 0)
+                sb.append(';');
+            sb.append(trace[i].getClassName()).append('.').append(trace[i].getMethodName());
+        }
+        return sb.length() > 0 ? sb.toString() : "(no stack)";
+    }
+
+    // Method to write the sampled stacks of a stall to a new report, returning it, or null if it could not be
+    private static Path write(Map<String, Integer> stacks, long stall) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : stacks.entrySet())
+            lines.add(entry.getKey() + " " + entry.getValue());
+        String name = "stall-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-"
+                + TimeUnit.NANOSECONDS.toMillis(stall) + "ms.collapsed";
+        try {
+            Files.createDirectories(DIRECTORY);
+            return Files.write(DIRECTORY.resolve(name), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Error writing stall report!");
+            return null;
+        }
+    }
+}
@@ -1,18 +1,15 @@
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.KeyEvent;
 import java.awt.print.PrinterException;
-import java.io.BufferedReader;
 import java.io.*;
+import java.nio.charset.Charset;
 
 import javax.swing.JOptionPane;
 
 public class FileActionListener implements ActionListener {
 
     Notepad notepad;
-    // Variables to store the file directory and name
-    String fileDirectory, fileName;
 
     public FileActionListener(Notepad notepad) {
         this.notepad = notepad;
@@ -47,6 +44,10 @@ public class FileActionListener implements ActionListener {
                 }
                 break;
 
+            case "Close Tab":
+                notepad.tabs.close(notepad.buffer);
+                break;
+
             case "Close":
                 notepad.dispose();
                 break;
@@ -56,14 +57,9 @@ public class FileActionListener implements ActionListener {
         }
     }
 
-    // Method to create a new file
+    // Method to create a new file in its own tab
     private void newFile() {
-        fileName = null; // Reset file name
-        fileDirectory = null; // Reset file directory
-        notepad.setTitle("Notepad - New"); // Set title to "New"
-        notepad.textarea.setText(""); // Clear text area
-        notepad.wordCount = 0;
-        notepad.undoManager.discardAllEdits(); // Discard all undo edits
+        notepad.tabs.add(new Buffer(notepad));
     }
 
     // Method to open an existing file
@@ -81,49 +77,76 @@ public class FileActionListener implements ActionListener {
         if (fd.getFile() == null)
             return; // If no file is selected, return
 
-        fileDirectory = fd.getDirectory(); // Get the selected file's directory
-        fileName = fd.getFile(); // Get the selected file's name
-        notepad.setTitle("Notepad - " + fileName); // Set the notepad title to the file name
-
-        try {
-            // Read the file content
-            BufferedReader reader = new BufferedReader(new FileReader(fileDirectory + fileName));
-            notepad.textarea.setText(""); // Clear the text area
-            String line;
-            while ((line = reader.readLine()) != null)
-                notepad.textarea.append(line + "\n"); // Append each line to the text area
-            notepad.undoManager.discardAllEdits(); // Discard all undo edits
-            notepad.textarea.requestFocus(); // Request focus for the text area
-            notepad.textarea.setCaretPosition(notepad.textarea.getDocument().getLength()); // Set the caret position to
-                                                                                           // the end
-            reader.close();
-        } catch (Exception e) {
-            System.err.println("Error reading file!");
+        openFile(new File(fd.getDirectory(), fd.getFile()), 0, 0);
+    }
+
+    // Method to open a file with the caret on the given line (large files jump to the byte position instead)
+    void openFile(File file, int line, long position) {
+        Buffer open = notepad.tabs.find(file);
+        if (open != null) {
+            // Already open, so switch to its tab instead of loading it twice
+            notepad.showBuffer(open);
+            if (open.largeFileBar != null && position > 0)
+                open.largeFileBar.jumpTo(position);
+            else if (line > 0 && open.doc instanceof EditorDocument && !open.isLoading())
+                notepad.textarea.setCaretPosition(open.doc.getDefaultRootElement()
+                        .getElement(Math.min(line, open.doc.getDefaultRootElement().getElementCount() - 1))
+                        .getStartOffset());
+            return;
+        }
+
+        Buffer buffer = notepad.openBuffer(); // Open a new tab unless the current one is unused
+        buffer.fileDirectory = file.getAbsoluteFile().getParent() + File.separator; // Get the file's directory
+        buffer.fileName = file.getName(); // Get the file's name
+
+        if (file.length() > LargeFileDocument.THRESHOLD) {
+            // Too large to load into memory, so map it and show it read-only
+            if (buffer.fileLoader != null)
+                buffer.fileLoader.cancel(true);
+            buffer.fileLoader = null;
+            EditorEvents.FileOpen event = new EditorEvents.FileOpen();
+            event.path = file.getPath();
+            event.bytes = file.length();
+            event.charset = Charset.defaultCharset().name();
+            event.begin();
+            try {
+                buffer.setDocument(new LargeFileDocument(file, Charset.defaultCharset()));
+                notepad.updateTitle(); // Set the notepad title to the file name
+                if (position > 0)
+                    buffer.largeFileBar.jumpTo(position);
+                event.finish("mapped");
+            } catch (IOException e) {
+                buffer.forgetFile(); // It still shows what it held before
+                System.err.println("Error reading file!");
+                event.finish("failed");
+            }
+            return;
         }
-        // Invoke a keyReleased event manually to update the details label on file open
-        notepad.textarea.dispatchEvent(new KeyEvent(
-                notepad.textarea, KeyEvent.KEY_RELEASED, System.currentTimeMillis(), 0, 0, 'O'));
+
+        notepad.updateTitle(); // Set the notepad title to the file name
+
+        // Read the file content in the background
+        FileLoader loader = new FileLoader(notepad, file, Charset.defaultCharset());
+        loader.setCaretLine(line);
+        loader.start();
     }
 
     // Method to save the current file
     private void save() {
-        if (fileName == null) {
+        if (isReadOnly())
+            return;
+        if (notepad.buffer.fileName == null) {
             saveAs(); // If no file name, call saveAs()
             return;
         }
 
-        try {
-            // Write the text area content to the file
-            FileWriter writer = new FileWriter(fileDirectory + fileName);
-            writer.write(notepad.textarea.getText());
-            writer.close();
-        } catch (Exception e) {
-            System.err.println("Error saving file!");
-        }
+        writeFile();
     }
 
     // Method to save the current file with a new name
     private void saveAs() {
+        if (isReadOnly())
+            return;
         // Create and open a file dialog for saving
         FileDialog fd = new FileDialog(notepad, "Save As", FileDialog.SAVE);
         fd.setFile(".txt"); // Set default file extension
@@ -132,17 +155,41 @@ public class FileActionListener implements ActionListener {
         if (fd.getFile() == null)
             return; // If no file is selected, return
 
-        fileDirectory = fd.getDirectory(); // Get the selected file's directory
-        fileName = fd.getFile(); // Get the selected file's name
-        notepad.setTitle("Notepad - " + fileName); // Set the notepad title to the file name
-
-        try {
-            // Write the text area content to the file
-            FileWriter writer = new FileWriter(fileDirectory + fileName);
-            writer.write(notepad.textarea.getText());
-            writer.close();
-        } catch (Exception e) {
-            System.err.println("Error saving file!");
+        notepad.buffer.fileDirectory = fd.getDirectory(); // Get the selected file's directory
+        notepad.buffer.fileName = fd.getFile(); // Get the selected file's name
+        notepad.updateTitle(); // Set the notepad title to the file name
+
+        writeFile();
+    }
+
+    // Method to write the text area content to the file in the background
+    private void writeFile() {
+        if (notepad.buffer.isLoading()) {
+            JOptionPane.showMessageDialog(notepad, "The file is still loading.", "Save",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
+        if (notepad.buffer.fileSaver != null) {
+            JOptionPane.showMessageDialog(notepad, "A save is still in progress.", "Save",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (notepad.buffer.isEvicted()) {
+            // Its text could not be read back, and the text area does not hold it
+            JOptionPane.showMessageDialog(notepad, "The text of this tab could not be read back.", "Save",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        EditorDocument doc = (EditorDocument) notepad.textarea.getDocument();
+        new FileSaver(notepad, doc, notepad.buffer.getFile()).start();
+    }
+
+    // Method to check for the read-only large file viewer, which cannot be saved
+    private boolean isReadOnly() {
+        if (!(notepad.textarea.getDocument() instanceof LargeFileDocument))
+            return false;
+        JOptionPane.showMessageDialog(notepad, "Large files are opened read-only and cannot be saved.",
+                "Save", JOptionPane.INFORMATION_MESSAGE);
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import javax.swing.AbstractAction;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/**
+ * Loads a file into a buffer without blocking the EDT.
+ *
+ * The file is decoded on a worker thread in large chunks, and the chunks are
+ * appended to the document in a few bulk inserts on the EDT. The first chunk
+ * is small so that the first screenful shows up straight away. Line endings
+ * are normalized to "\n" (like BufferedReader.readLine() did), and the
+ * original separator is kept in the EndOfLineStringProperty for saving. No
+ * undo history is recorded for the load, and Escape cancels it. A load that
+ * is cancelled or fails leaves its partial text in an untitled buffer, so
+ * that saving it cannot overwrite the file.
+ */
+public class FileLoader extends SwingWorker<Void, String> {
+    // Document property holding the charset the file was decoded with
+    public static final String CHARSET_PROPERTY = "charset";
+
+    private static final int FIRST_CHUNK = 16 * 1024;
+    private static final int CHUNK = 4 * 1024 * 1024;
+    private static final String CANCEL_ACTION = "cancel-load";
+    private static final KeyStroke CANCEL_KEY = KeyStroke.getKeyStroke("ESCAPE");
+
+    private final Notepad notepad;
+    // The buffer being loaded into, which need not stay the active one; null for readInto
+    private final Buffer buffer;
+    private Document doc;
+    private final File file;
+    private final Charset charset;
+    private final long fileSize;
+    private String lineSeparator;
+    private boolean pendingCR;
+    private int caretLine;
+    private Runnable whenLoaded;
+    // Flight Recorder event covering the load, from start() to done()
+    private final EditorEvents.FileOpen event = new EditorEvents.FileOpen();
+    // Whether every character is ASCII and every line ends the same way, for delta saves
+    private boolean ascii = true, mixedSeparators;
+    private final AbstractAction cancelAction = new AbstractAction() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            cancel(true);
+        }
+    };
+
+    public FileLoader(Notepad notepad, File file, Charset charset) {
+        this.notepad = notepad;
+        this.buffer = notepad != null ? notepad.buffer : null;
+        this.file = file;
+        this.charset = charset;
+        this.fileSize = file.length();
+    }
+
+    // Method to choose the line (counting from 0) the caret is put on once the file is loaded
+    public void setCaretLine(int line) {
+        caretLine = line;
+    }
+
+    // Method to run an action once the file has loaded successfully
+    public void whenLoaded(Runnable action) {
+        whenLoaded = action;
+    }
+
+    // Method to prepare the buffer and start loading; must be called on the EDT
+    public void start() {
+        event.path = file.getPath();
+        event.bytes = fileSize;
+        event.charset = charset.name();
+        event.begin();
+        if (buffer.fileLoader != null)
+            buffer.fileLoader.cancel(true);
+        buffer.fileLoader = this;
+        if (!(buffer.doc instanceof EditorDocument))
+            buffer.setDocument(new EditorDocument()); // Leave the read-only viewer if it is open
+
+        doc = buffer.doc;
+        doc.removeUndoableEditListener(buffer.undoManager);
+        buffer.journal.detach(); // The file itself holds what is loaded
+        try {
+            doc.remove(0, doc.getLength()); // Clear the buffer
+        } catch (BadLocationException e) {
+            System.err.println("Error clearing document!");
+        }
+        doc.putProperty(DefaultEditorKit.EndOfLineStringProperty, null);
+        // Read-only, with the view kept at the top while text is appended below it
+        if (notepad.buffer == buffer)
+            notepad.showBuffer(buffer);
+
+        InputMap inputMap = notepad.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        inputMap.put(CANCEL_KEY, CANCEL_ACTION);
+        notepad.getRootPane().getActionMap().put(CANCEL_ACTION, cancelAction);
+
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && !isDone())
+                notepad.statusScheduler.setActivity("Loading " + file.getName() + "... "
+                        + e.getNewValue() + "% (Esc to cancel)");
+        });
+        notepad.statusScheduler.setActivity("Loading " + file.getName() + "...");
+        execute();
+    }
+
+    @Override
+    protected Void doInBackground() throws IOException {
+        read(chunk -> publish(chunk));
+        return null;
+    }
+
+    // Method to read the whole file into target on the calling thread, outside the editor (the benchmarks use it)
+    void readInto(Document target) throws IOException {
+        read(chunk -> {
+            try {
+                target.insertString(target.getLength(), chunk, null);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        target.putProperty(CHARSET_PROPERTY, charset);
+        if (lineSeparator != null)
+            target.putProperty(DefaultEditorKit.EndOfLineStringProperty, lineSeparator);
+    }
+
+    // Method to decode the file and hand its normalized text to sink a chunk at a time
+    private void read(Consumer<String> sink) throws IOException {
+        try (FileInputStream in = new FileInputStream(file);
+             Reader reader = new InputStreamReader(in, charset)) {
+            FileChannel channel = in.getChannel();
+            char[] buffer = new char[FIRST_CHUNK];
+            int filled = 0;
+            int n;
+            while ((n = reader.read(buffer, filled, buffer.length - filled)) != -1) {
+                if (isCancelled())
+                    return;
+                filled += n;
+                if (filled == buffer.length) {
+                    sink.accept(normalize(buffer, filled));
+                    filled = 0;
+                    if (buffer.length < CHUNK)
+                        buffer = new char[CHUNK];
+                    if (fileSize > 0)
+                        setProgress((int) Math.min(100, channel.position() * 100 / fileSize));
+                }
+            }
+            if (filled > 0 || pendingCR)
+                sink.accept(normalize(buffer, filled));
+        }
+    }
+
+    // Method to turn "\r\n" and lone "\r" into "\n", carrying a trailing "\r" to the next chunk
+    private String normalize(char[] buffer, int length) {
+        StringBuilder sb = new StringBuilder(length + 1);
+        int i = 0;
+        if (pendingCR) {
+            sb.append('\n');
+            pendingCR = false;
+            if (length > 0 && buffer[0] == '\n') {
+                i = 1;
+                noteSeparator("\r\n");
+            } else {
+                noteSeparator("\r");
+            }
+        }
+        for (; i < length; i++) {
+            char c = buffer[i];
+            if (c >= 0x80)
+                ascii = false;
+            if (c == '\r') {
+                if (i + 1 == length) {
+                    pendingCR = true;
+                    break;
+                }
+                if (buffer[i + 1] == '\n') {
+                    i++;
+                    noteSeparator("\r\n");
+                } else {
+                    noteSeparator("\r");
+                }
+                sb.append('\n');
+            } else {
+                if (c == '\n')
+                    noteSeparator("\n");
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void noteSeparator(String separator) {
+        if (lineSeparator == null)
+            lineSeparator = separator;
+        else if (!separator.equals(lineSeparator))
+            mixedSeparators = true;
+    }
+
+    @Override
+    protected void process(List<String> chunks) {
+        if (isCancelled())
+            return;
+        String text;
+        if (chunks.size() == 1) {
+            text = chunks.get(0);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (String chunk : chunks)
+                sb.append(chunk);
+            text = sb.toString();
+        }
+        try {
+            // One bulk insert per batch of chunks
+            doc.insertString(doc.getLength(), text, null);
+        } catch (BadLocationException e) {
+            cancel(true);
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (buffer.fileLoader != this) {
+            event.finish("superseded");
+            return; // Superseded by a newer load, which owns the buffer now
+        }
+        buffer.fileLoader = null;
+        if (notepad.getRootPane().getActionMap().get(CANCEL_ACTION) == cancelAction) {
+            notepad.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).remove(CANCEL_KEY);
+            notepad.getRootPane().getActionMap().remove(CANCEL_ACTION);
+        }
+
+        doc.putProperty(CHARSET_PROPERTY, charset);
+        if (lineSeparator != null)
+            doc.putProperty(DefaultEditorKit.EndOfLineStringProperty, lineSeparator);
+        doc.addUndoableEditListener(buffer.undoManager);
+        buffer.undoManager.discardAllEdits(); // Discard all undo edits
+        Element root = doc.getDefaultRootElement();
+        buffer.dot = buffer.mark = root.getElement(Math.min(caretLine, root.getElementCount() - 1)).getStartOffset();
+        buffer.viewY = -1; // Scroll to the caret
+        if (notepad.buffer == buffer) {
+            notepad.showBuffer(buffer); // Editable again, with the caret in place
+            notepad.textarea.requestFocus(); // Request focus for the text area
+        } else {
+            notepad.tabs.enforceBudget(); // Loaded in the background, so it counts now
+        }
+
+        ChangeTracker changes = doc instanceof EditorDocument ? ((EditorDocument) doc).getChangeTracker() : null;
+        try {
+            get();
+            if (changes != null) {
+                boolean singleByte = charset.newEncoder().maxBytesPerChar() == 1.0f;
+                changes.markClean(file, charset, lineSeparator != null ? lineSeparator : "\n",
+                        !mixedSeparators && (ascii || singleByte));
+            }
+            buffer.journal.attach(doc, file, charset);
+            notepad.statusScheduler.setActivity(null);
+            event.finish("loaded");
+            if (whenLoaded != null)
+                whenLoaded.run();
+        } catch (CancellationException e) {
+            if (changes != null)
+                changes.markClean(null, charset, "\n", false);
+            buffer.journal.attach(doc, null, charset);
+            buffer.forgetFile(); // Only part of the file is here
+            notepad.statusScheduler.setActivity("Loading cancelled");
+            event.finish("cancelled");
+        } catch (Exception e) {
+            if (changes != null)
+                changes.markClean(null, charset, "\n", false);
+            buffer.journal.attach(doc, null, charset);
+            buffer.forgetFile();
+            System.err.println("Error reading file!");
+            notepad.statusScheduler.setActivity("Error reading " + file.getName());
+            event.finish("failed");
+        }
+    }
+}
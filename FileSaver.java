@@ -0,0 +1,260 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Segment;
+
+/**
+ * Saves a document to disk without blocking the EDT.
+ *
+ * The text is snapshotted on the EDT, then streamed a chunk at a time through
+ * a CharsetEncoder into a temporary file next to the target. Only once that
+ * file is complete and forced to disk is it renamed over the target, so a
+ * crash or a full disk mid-save leaves the old file untouched. Line endings
+ * and the charset the file was loaded with are written back as they were.
+ *
+ * When the document's ChangeTracker finds that only a few ranges of a large
+ * file changed, those bytes are patched in place instead (see ChangeTracker).
+ */
+public class FileSaver extends SwingWorker<Long, Void> {
+    private static final int CHUNK = 64 * 1024;
+
+    private final Notepad notepad;
+    private final Buffer buffer;
+    private final EditorDocument doc;
+    private final File file;
+    private final PieceTableContent.Snapshot text;
+    private final Charset charset;
+    private final String lineSeparator;
+    private final ChangeTracker changes;
+    private final ChangeTracker.Patch patch;
+    private final long toWrite;
+
+    private CharsetEncoder encoder;
+    private ByteBuffer out;
+    private FileChannel channel;
+    private long written, encoded;
+    private boolean ascii = true;
+    // Flight Recorder event covering the save, from start() to done()
+    private final EditorEvents.FileSave event = new EditorEvents.FileSave();
+
+    public FileSaver(Notepad notepad, EditorDocument doc, File file) {
+        this.notepad = notepad;
+        this.buffer = notepad != null ? notepad.buffer : null; // None when saving outside the editor
+        this.doc = doc;
+        this.file = file;
+        this.text = doc.snapshot();
+        if (buffer != null)
+            buffer.journal.beginSave(doc);
+        Object charset = doc.getProperty(FileLoader.CHARSET_PROPERTY);
+        this.charset = charset instanceof Charset ? (Charset) charset : Charset.defaultCharset();
+        Object separator = doc.getProperty(DefaultEditorKit.EndOfLineStringProperty);
+        this.lineSeparator = separator instanceof String ? (String) separator : "\n";
+        this.changes = doc.getChangeTracker();
+        this.patch = changes.beginSave(file, text, this.charset, lineSeparator);
+        long n = 0;
+        if (patch.isFull()) {
+            n = text.length();
+        } else {
+            for (int i = 0; i < patch.starts.length; i++)
+                n += patch.ends[i] - patch.starts[i];
+        }
+        this.toWrite = n;
+    }
+
+    // Method to start saving in the background; must be called on the EDT
+    public void start() {
+        event.path = file.getPath();
+        event.charset = charset.name();
+        event.patched = !patch.isFull();
+        event.begin();
+        buffer.fileSaver = this;
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && !isDone())
+                notepad.statusScheduler.setActivity("Saving " + file.getName() + "... " + e.getNewValue() + "%");
+        });
+        notepad.statusScheduler.setActivity("Saving " + file.getName() + "...");
+        execute();
+    }
+
+    @Override
+    protected Long doInBackground() throws IOException {
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        out = ByteBuffer.allocateDirect(CHUNK);
+        if (!patch.isFull())
+            return patchInPlace();
+
+        Path target = file.toPath().toAbsolutePath();
+        if (Files.isSymbolicLink(target))
+            target = target.toRealPath(); // Replace the file the link points to, not the link
+        Path temp = target.resolveSibling("." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+        boolean moved = false;
+        try {
+            try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channel = ch;
+                write(0, text.length());
+                ch.force(true);
+            }
+            copyPermissions(target, temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            syncDirectory(target.getParent());
+        } finally {
+            if (!moved)
+                Files.deleteIfExists(temp);
+        }
+        return written;
+    }
+
+    // Method to write only the changed ranges into the existing file
+    private long patchInPlace() throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel = ch;
+            for (int i = 0; i < patch.starts.length; i++) {
+                ch.position(patch.positions[i]);
+                write(patch.starts[i], patch.ends[i]);
+            }
+            if (patch.truncate)
+                ch.truncate(ch.position());
+            ch.force(true);
+        }
+        return written;
+    }
+
+    // Method to encode [from, to) of the snapshot into the channel, translating "\n" to the file's line separator
+    private void write(int from, int to) throws IOException {
+        encoder.reset();
+        CharBuffer chars = CharBuffer.allocate(CHUNK);
+        Segment segment = new Segment();
+        int pos = from;
+        while (pos < to) {
+            if (isCancelled())
+                throw new CancellationException();
+            // Ask for no more than fits even if every character is a line break
+            text.getChars(pos, Math.min(to - pos, chars.remaining() / lineSeparator.length()), segment);
+            pos += segment.count;
+            encoded += segment.count;
+            put(segment, chars);
+            chars.flip();
+            encode(chars, false); // A split surrogate pair stays in the buffer for the next round
+            chars.compact();
+            setProgress((int) (encoded * 100 / toWrite));
+        }
+        chars.flip();
+        encode(chars, true);
+        while (encoder.flush(out).isOverflow())
+            drain();
+        drain();
+    }
+
+    private void put(Segment segment, CharBuffer chars) {
+        for (int i = segment.offset, end = segment.offset + segment.count; ascii && i < end; i++) {
+            if (segment.array[i] >= 0x80)
+                ascii = false;
+        }
+        if (lineSeparator.equals("\n")) {
+            chars.put(segment.array, segment.offset, segment.count);
+            return;
+        }
+        for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+            char c = segment.array[i];
+            if (c == '\n')
+                chars.put(lineSeparator);
+            else
+                chars.put(c);
+        }
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, endOfInput);
+            if (result.isUnderflow())
+                return;
+            if (result.isOverflow())
+                drain();
+            else
+                result.throwException();
+        }
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            written += channel.write(out);
+        out.clear();
+    }
+
+    // Method to give the new file the permissions of the one it replaces
+    private static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from))
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not a POSIX file system, keep the defaults
+        }
+    }
+
+    // Method to make the rename itself durable, where the platform allows syncing a directory
+    private static void syncDirectory(Path dir) {
+        if (dir == null)
+            return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (buffer.fileSaver == this)
+            buffer.fileSaver = null;
+        boolean singleByte = charset.newEncoder().maxBytesPerChar() == 1.0f;
+        try {
+            long bytes = get();
+            changes.endSave(patch, file, charset, lineSeparator, singleByte || ascii, true);
+            buffer.journal.endSave(doc, file, charset, true);
+            notepad.statusScheduler.setActivity(String.format("Saved %s (%,d of %,d bytes written)",
+                    file.getName(), bytes, file.length()));
+            event.finish("saved", bytes);
+        } catch (CancellationException e) {
+            changes.endSave(patch, file, charset, lineSeparator, false, false);
+            buffer.journal.endSave(doc, file, charset, false);
+            notepad.statusScheduler.setActivity("Saving cancelled");
+            event.finish("cancelled", written);
+        } catch (InterruptedException | ExecutionException e) {
+            changes.endSave(patch, file, charset, lineSeparator, false, false);
+            buffer.journal.endSave(doc, file, charset, false);
+            System.err.println("Error saving file!");
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            notepad.statusScheduler.setActivity("Error saving " + file.getName());
+            event.finish("failed", written);
+            JOptionPane.showMessageDialog(notepad, "Could not save " + file.getName() + ":\n" + cause,
+                    "Save", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
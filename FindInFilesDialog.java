@@ -0,0 +1,407 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches every file under a folder and lists the matching lines.
+ *
+ * The tree is walked with fork-join tasks, one per directory plus one per
+ * batch of files, on a pool with one thread per core. Small files are read
+ * into a per-thread buffer and larger ones are memory-mapped, and files with
+ * a NUL byte near the start are skipped as binary. Matches stream into the
+ * list as they are found; double-click or Enter opens the file at that line.
+ */
+public class FindInFilesDialog extends JDialog {
+    // Files up to this size are read into a buffer, larger ones are mapped
+    private static final int READ_LIMIT = 1024 * 1024;
+    // A NUL byte in this many leading bytes marks a file as binary
+    private static final int BINARY_CHECK = 8 * 1024;
+    private static final int FILES_PER_TASK = 32;
+    private static final int MAX_MATCHES_PER_FILE = 1000;
+    private static final int MAX_LINE_BYTES = 300;
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of(".git", ".svn", ".hg");
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_LIMIT));
+
+    private final Notepad notepad;
+    private JTextField findField;
+    private JTextField folderField;
+    private JTextField namesField;
+    private JCheckBox matchCaseCheckBox;
+    private JCheckBox wholeWordCheckBox;
+    private JButton searchButton;
+    private JLabel statusLabel;
+    private final DefaultListModel<Match> results = new DefaultListModel<>();
+    private JList<Match> resultList;
+    private SearchWorker worker;
+
+    public FindInFilesDialog(Notepad notepad) {
+        super(notepad, "Find in Files", false);
+        this.notepad = notepad;
+        initializeUI();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initializeUI() {
+        setLayout(new BorderLayout());
+        setSize(700, 500);
+        setLocationRelativeTo(getOwner());
+
+        JPanel mainPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(5, 5, 5, 5);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        mainPanel.add(new JLabel("Find:"), gbc);
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        findField = new JTextField(20);
+        mainPanel.add(findField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.weightx = 0.0;
+        mainPanel.add(new JLabel("In folder:"), gbc);
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        String folder = notepad.buffer.fileDirectory != null ? notepad.buffer.fileDirectory : System.getProperty("user.dir");
+        folderField = new JTextField(folder, 20);
+        mainPanel.add(folderField, gbc);
+        gbc.gridx = 2;
+        gbc.weightx = 0.0;
+        JButton browseButton = new JButton("Browse...");
+        browseButton.addActionListener(e -> browse());
+        mainPanel.add(browseButton, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        mainPanel.add(new JLabel("File names:"), gbc);
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        namesField = new JTextField("*", 20);
+        namesField.setToolTipText("Patterns such as *.txt;*.log");
+        mainPanel.add(namesField, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        gbc.gridwidth = 3;
+        JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        matchCaseCheckBox = new JCheckBox("Match case");
+        wholeWordCheckBox = new JCheckBox("Whole word");
+        searchButton = new JButton("Search");
+        optionsPanel.add(matchCaseCheckBox);
+        optionsPanel.add(wholeWordCheckBox);
+        optionsPanel.add(searchButton);
+        mainPanel.add(optionsPanel, gbc);
+        add(mainPanel, BorderLayout.NORTH);
+
+        resultList = new JList<>(results);
+        resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        resultList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(resultList), BorderLayout.CENTER);
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        add(statusLabel, BorderLayout.SOUTH);
+
+        searchButton.addActionListener(e -> search());
+        findField.addActionListener(e -> search());
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    openSelected();
+            }
+        });
+        resultList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER)
+                    openSelected();
+            }
+        });
+    }
+
+    private void browse() {
+        JFileChooser chooser = new JFileChooser(folderField.getText());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+            folderField.setText(chooser.getSelectedFile().getPath());
+    }
+
+    // Method to start a search, or cancel the running one
+    private void search() {
+        if (worker != null) {
+            worker.stop();
+            return;
+        }
+        String query = findField.getText();
+        if (query.isEmpty()) return;
+        Path root = new File(folderField.getText()).toPath();
+        if (!Files.isDirectory(root)) {
+            JOptionPane.showMessageDialog(this, "Folder not found", "Find in Files", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        results.clear();
+        worker = new SearchWorker(root, query, namesField.getText());
+        searchButton.setText("Cancel");
+        worker.execute();
+    }
+
+    private void openSelected() {
+        Match match = resultList.getSelectedValue();
+        if (match == null) return;
+        new FileActionListener(notepad).openFile(match.file, match.line, match.position);
+        notepad.toFront();
+    }
+
+    @Override
+    public void dispose() {
+        if (worker != null)
+            worker.stop();
+        super.dispose();
+    }
+
+    // A matching line
+    private static final class Match {
+        final File file;
+        final int line;
+        final long position;
+        final String label;
+
+        Match(File file, String path, int line, long position, String text) {
+            this.file = file;
+            this.line = line;
+            this.position = position;
+            this.label = path + ":" + (line + 1) + ": " + text.trim();
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Walks the tree on a fork-join pool and publishes matches as they are found
+    private class SearchWorker extends SwingWorker<Void, Match> {
+        private final Path root;
+        private final byte[] pattern;
+        private final boolean ignoreCase, wholeWord;
+        private final List<PathMatcher> nameMatchers = new ArrayList<>();
+        private final Charset charset = Charset.defaultCharset();
+        private final AtomicInteger filesSearched = new AtomicInteger();
+        private final AtomicInteger binarySkipped = new AtomicInteger();
+        private final AtomicInteger matchCount = new AtomicInteger();
+        private final Timer statusTimer = new Timer(200, e -> showStatus("Searching... "));
+        // Threads are only started once tasks are submitted
+        private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        SearchWorker(Path root, String query, String names) {
+            this.root = root;
+            ignoreCase = !matchCaseCheckBox.isSelected();
+            wholeWord = wholeWordCheckBox.isSelected();
+            pattern = MappedFile.fold(query.getBytes(charset), ignoreCase);
+            for (String name : names.split("[;,]")) {
+                if (!name.isBlank())
+                    nameMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + name.trim()));
+            }
+            statusTimer.start();
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                pool.invoke(new DirectoryTask(root));
+            } finally {
+                pool.shutdownNow();
+            }
+            return null;
+        }
+
+        // Method to cancel the search and stop the walk, which would otherwise run on to the bottom of the tree
+        void stop() {
+            cancel(true);
+            pool.shutdownNow();
+        }
+
+        @Override
+        protected void process(List<Match> chunks) {
+            if (worker == this)
+                results.addAll(chunks); // One list event per batch
+        }
+
+        @Override
+        protected void done() {
+            statusTimer.stop();
+            if (worker != this) return;
+            worker = null;
+            searchButton.setText("Search");
+            showStatus(isCancelled() ? "Cancelled. " : "");
+        }
+
+        private void showStatus(String prefix) {
+            statusLabel.setText(String.format("%s%,d matches in %,d files searched (%,d binary files skipped)",
+                prefix, matchCount.get(), filesSearched.get(), binarySkipped.get()));
+        }
+
+        private boolean nameMatches(Path file) {
+            if (nameMatchers.isEmpty())
+                return true;
+            Path name = file.getFileName();
+            for (PathMatcher matcher : nameMatchers) {
+                if (matcher.matches(name))
+                    return true;
+            }
+            return false;
+        }
+
+        // Lists one directory, forking a task per subdirectory and per batch of files
+        private class DirectoryTask extends RecursiveAction {
+            private final Path dir;
+
+            DirectoryTask(Path dir) {
+                this.dir = dir;
+            }
+
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<>();
+                List<Path> files = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    for (Path entry : entries) {
+                        if (SearchWorker.this.isCancelled())
+                            return;
+                        BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                        if (attrs.isDirectory()) {
+                            if (!SKIPPED_DIRECTORIES.contains(entry.getFileName().toString()))
+                                tasks.add(new DirectoryTask(entry));
+                        } else if (attrs.isRegularFile() && attrs.size() > 0 && nameMatches(entry)) {
+                            files.add(entry);
+                            if (files.size() == FILES_PER_TASK) {
+                                tasks.add(new FileTask(files));
+                                files = new ArrayList<>();
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // Unreadable directory, skip it
+                }
+                if (!files.isEmpty())
+                    tasks.add(new FileTask(files));
+                invokeAll(tasks);
+            }
+        }
+
+        private class FileTask extends RecursiveAction {
+            private final List<Path> files;
+
+            FileTask(List<Path> files) {
+                this.files = files;
+            }
+
+            @Override
+            protected void compute() {
+                for (Path file : files) {
+                    if (SearchWorker.this.isCancelled())
+                        return;
+                    try {
+                        searchFile(file);
+                    } catch (IOException e) {
+                        // Unreadable file, skip it
+                    }
+                }
+            }
+        }
+
+        private void searchFile(Path file) throws IOException {
+            ByteBuffer buf;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE)
+                    return; // Too large for one buffer; open it in the viewer and search there
+                if (size <= READ_LIMIT) {
+                    buf = BUFFER.get();
+                    buf.clear();
+                    while (buf.position() < size && channel.read(buf) > 0) {
+                        // fill
+                    }
+                    buf.flip();
+                } else {
+                    buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            }
+            for (int i = 0, n = Math.min(BINARY_CHECK, buf.limit()); i < n; i++) {
+                if (buf.get(i) == 0) {
+                    binarySkipped.incrementAndGet();
+                    return;
+                }
+            }
+            filesSearched.incrementAndGet();
+
+            String path = root.relativize(file).toString();
+            int line = 0, lineStart = 0, counted = 0, found = 0;
+            int hit = MappedFile.indexOf(buf, 0, pattern, ignoreCase);
+            while (hit != -1 && found < MAX_MATCHES_PER_FILE) {
+                // Count the lines up to the match
+                for (; counted < hit; counted++) {
+                    if (buf.get(counted) == '\n') {
+                        line++;
+                        lineStart = counted + 1;
+                    }
+                }
+                if (wholeWord && !isWholeWord(buf, hit)) {
+                    hit = MappedFile.indexOf(buf, hit + 1, pattern, ignoreCase);
+                    continue;
+                }
+                int lineEnd = hit;
+                while (lineEnd < buf.limit() && buf.get(lineEnd) != '\n')
+                    lineEnd++;
+                publish(new Match(file.toFile(), path, line, hit, decode(buf, lineStart, lineEnd)));
+                matchCount.incrementAndGet();
+                found++;
+                if (lineEnd >= buf.limit())
+                    break;
+                // One result per line, so continue on the next one
+                hit = MappedFile.indexOf(buf, lineEnd + 1, pattern, ignoreCase);
+            }
+        }
+
+        private boolean isWholeWord(ByteBuffer buf, int hit) {
+            int after = hit + pattern.length;
+            return (hit == 0 || !isWordByte(buf.get(hit - 1))) && (after >= buf.limit() || !isWordByte(buf.get(after)));
+        }
+
+        // Letters, digits, '_' and any byte of a multi-byte character count as part of a word
+        private boolean isWordByte(byte b) {
+            return b < 0 || b == '_' || Character.isLetterOrDigit((char) b);
+        }
+
+        private String decode(ByteBuffer buf, int start, int end) {
+            byte[] bytes = new byte[Math.min(end - start, MAX_LINE_BYTES)];
+            buf.get(start, bytes);
+            return new String(bytes, charset).replace("\r", "");
+        }
+    }
+}
@@ -1,27 +1,125 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class FindReplaceDialog extends JDialog {
     private JTextField findField;
     private JTextField replaceField;
+    private JLabel replaceLabel;
     private JButton findButton;
+    private JButton previousButton;
     private JButton replaceButton;
     private JButton replaceAllButton;
     private JCheckBox matchCaseCheckBox;
     private JCheckBox wholeWordCheckBox;
+    private JCheckBox regexCheckBox;
+    private JLabel matchLabel;
     private JTextArea textArea;
     private int lastFindPosition = 0;
+    private SearchEngine searchEngine;
+    private ReplaceAllWorker replaceAllWorker;
+
+    // Regex matches of the running or last search; only the visible ones are highlighted
+    private MatchHighlighter matchHighlighter;
+    private RegexSearchWorker regexSearch;
+    private boolean pendingFind;
+    private Document watchedDocument;
+
+    // Index of literal matches, updated as the query is typed and the text is edited
+    private MatchIndex matchIndex;
+    private boolean selectOnUpdate;
+    private final Timer typingTimer = new Timer(150, e -> updateMatchIndex());
+    private final DocumentListener invalidator = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            invalidateRegexSearch();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            invalidateRegexSearch();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+    };
+
+    private final PropertyChangeListener documentWatcher = e -> {
+        invalidateRegexSearch();
+        watchDocument();
+    };
 
     public FindReplaceDialog(Frame parent, JTextArea textArea) {
-        super(parent, "Find and Replace", true);
+        // Not modal, so the text area can be scrolled and edited while searching
+        super(parent, "Find and Replace", false);
         this.textArea = textArea;
         initializeUI();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        matchHighlighter = new MatchHighlighter(textArea);
+        watchDocument();
+        textArea.addPropertyChangeListener("document", documentWatcher);
+    }
+
+    private void watchDocument() {
+        if (watchedDocument != null)
+            watchedDocument.removeDocumentListener(invalidator);
+        watchedDocument = textArea.getDocument();
+        watchedDocument.addDocumentListener(invalidator);
+
+        if (matchIndex != null)
+            matchIndex.dispose();
+        matchIndex = null;
+        if (watchedDocument instanceof EditorDocument) {
+            matchIndex = new MatchIndex((EditorDocument) watchedDocument, this::matchIndexChanged);
+            updateMatchIndex();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        invalidateRegexSearch();
+        if (replaceAllWorker != null)
+            replaceAllWorker.cancel(true);
+        matchHighlighter.dispose();
+        typingTimer.stop();
+        if (matchIndex != null)
+            matchIndex.dispose();
+        watchedDocument.removeDocumentListener(invalidator);
+        textArea.removePropertyChangeListener("document", documentWatcher);
+        super.dispose();
+    }
+
+    // Method to show the dialog, or bring it to the front, with or without the replace controls
+    public void open(boolean replace) {
+        setTitle(replace ? "Find and Replace" : "Find");
+        replaceLabel.setVisible(replace);
+        replaceField.setVisible(replace);
+        replaceButton.setVisible(replace);
+        replaceAllButton.setVisible(replace);
+        if (!isVisible())
+            setVisible(true);
+        toFront();
+        findField.requestFocusInWindow();
+        findField.selectAll();
     }
 
     private void initializeUI() {
         setLayout(new BorderLayout());
-        setSize(400, 200);
+        setSize(450, 200);
         setLocationRelativeTo(getOwner());
 
         // Create main panel
@@ -44,7 +142,8 @@ public class FindReplaceDialog extends JDialog {
         gbc.gridx = 0;
         gbc.gridy = 1;
         gbc.weightx = 0.0;
-        mainPanel.add(new JLabel("Replace with:"), gbc);
+        replaceLabel = new JLabel("Replace with:");
+        mainPanel.add(replaceLabel, gbc);
 
         gbc.gridx = 1;
         gbc.weightx = 1.0;
@@ -59,16 +158,22 @@ public class FindReplaceDialog extends JDialog {
         JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         matchCaseCheckBox = new JCheckBox("Match case");
         wholeWordCheckBox = new JCheckBox("Whole word");
+        regexCheckBox = new JCheckBox("Regular expression");
+        matchLabel = new JLabel("");
         optionsPanel.add(matchCaseCheckBox);
         optionsPanel.add(wholeWordCheckBox);
+        optionsPanel.add(regexCheckBox);
+        optionsPanel.add(matchLabel);
         mainPanel.add(optionsPanel, gbc);
 
         // Buttons panel
         gbc.gridy = 3;
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        previousButton = new JButton("Previous");
         findButton = new JButton("Find");
         replaceButton = new JButton("Replace");
         replaceAllButton = new JButton("Replace All");
+        buttonPanel.add(previousButton);
         buttonPanel.add(findButton);
         buttonPanel.add(replaceButton);
         buttonPanel.add(replaceAllButton);
@@ -77,6 +182,7 @@ public class FindReplaceDialog extends JDialog {
         add(mainPanel, BorderLayout.CENTER);
 
         // Add action listeners
+        previousButton.addActionListener(e -> findPrevious());
         findButton.addActionListener(e -> find());
         replaceButton.addActionListener(e -> replace());
         replaceAllButton.addActionListener(e -> replaceAll());
@@ -86,71 +192,635 @@ public class FindReplaceDialog extends JDialog {
             @Override
             public void keyPressed(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_ENTER) {
-                    find();
+                    if (e.isShiftDown())
+                        findPrevious();
+                    else
+                        find();
                 }
             }
         });
+
+        // Search as the query is typed or the options change
+        typingTimer.setRepeats(false);
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        matchCaseCheckBox.addActionListener(e -> queryChanged());
+        wholeWordCheckBox.addActionListener(e -> queryChanged());
+        regexCheckBox.addActionListener(e -> queryChanged());
+    }
+
+    private void queryChanged() {
+        selectOnUpdate = true;
+        typingTimer.restart();
+    }
+
+    // Method to point the match index at the current query (or at nothing in regex mode)
+    private void updateMatchIndex() {
+        typingTimer.stop();
+        if (matchIndex == null)
+            return;
+        String searchText = findField.getText();
+        if (searchText.isEmpty() || regexCheckBox.isSelected()) {
+            selectOnUpdate = false;
+            matchIndex.setEngine(null);
+            return;
+        }
+        matchIndex.setEngine(getSearchEngine(searchText));
+    }
+
+    // Method to refresh the counter, and select the first hit from the selection while typing
+    private void matchIndexChanged() {
+        if (regexCheckBox.isSelected() || findField.getText().isEmpty()) {
+            if (regexSearch == null)
+                matchLabel.setText("");
+            return;
+        }
+        if (!matchIndex.isComplete()) {
+            matchLabel.setText("Searching...");
+            return;
+        }
+        if (matchIndex.getCount() == 0) {
+            selectOnUpdate = false;
+            matchLabel.setText("No matches");
+            return;
+        }
+        if (selectOnUpdate) {
+            selectOnUpdate = false;
+            int index = matchIndex.indexAtOrAfter(textArea.getSelectionStart());
+            selectMatch(index == matchIndex.getCount() ? 0 : index);
+            return;
+        }
+        int current = currentMatch();
+        matchLabel.setText(current == -1 ? matchIndex.getCount() + " matches"
+            : "Match " + (current + 1) + " of " + matchIndex.getCount());
+    }
+
+    // Index of the hit that is selected right now, or -1
+    private int currentMatch() {
+        int start = textArea.getSelectionStart();
+        int index = matchIndex.indexAtOrAfter(start);
+        if (index < matchIndex.getCount() && matchIndex.getStart(index) == start
+                && textArea.getSelectionEnd() - start == matchIndex.getMatchLength())
+            return index;
+        return -1;
+    }
+
+    private void selectMatch(int index) {
+        int start = matchIndex.getStart(index);
+        textArea.setSelectionStart(start);
+        textArea.setSelectionEnd(start + matchIndex.getMatchLength());
+        matchLabel.setText("Match " + (index + 1) + " of " + matchIndex.getCount());
+    }
+
+    // Method to check that the index is ready and built for the query in the find field
+    private boolean isMatchIndexReady() {
+        if (matchIndex == null || regexCheckBox.isSelected())
+            return false;
+        if (typingTimer.isRunning())
+            updateMatchIndex(); // Enter was pressed before the index caught up with the typing
+        return matchIndex.isComplete();
+    }
+
+    // Method to select the hit before the selection, wrapping around at the start
+    private void findPrevious() {
+        if (findField.getText().isEmpty() || !isMatchIndexReady()) return;
+        if (matchIndex.getCount() == 0) {
+            JOptionPane.showMessageDialog(this, "Text not found", "Find", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        int index = matchIndex.indexAtOrAfter(textArea.getSelectionStart()) - 1;
+        selectMatch(index < 0 ? matchIndex.getCount() - 1 : index);
     }
 
     private void find() {
         String searchText = findField.getText();
         if (searchText.isEmpty()) return;
 
-        String content = textArea.getText();
-        if (!matchCaseCheckBox.isSelected()) {
-            searchText = searchText.toLowerCase();
-            content = content.toLowerCase();
+        if (regexCheckBox.isSelected()) {
+            findRegex(searchText);
+            return;
         }
+        if (regexSearch != null)
+            invalidateRegexSearch(); // Back to literal search, so drop the regex highlights
 
-        int startIndex = content.indexOf(searchText, lastFindPosition);
-        if (startIndex == -1) {
-            // If not found from current position, start from beginning
-            startIndex = content.indexOf(searchText);
-            if (startIndex == -1) {
+        EditorEvents.Find event = new EditorEvents.Find();
+        event.queryLength = searchText.length();
+        event.begin();
+        if (textArea.getDocument() instanceof LargeFileDocument) {
+            findInLargeFile((LargeFileDocument) textArea.getDocument(), searchText, event);
+            return;
+        }
+
+        // Start after the selected match, or at the caret
+        int from = textArea.getSelectionStart() != textArea.getSelectionEnd() ?
+            textArea.getSelectionStart() + 1 : textArea.getCaretPosition();
+        if (isMatchIndexReady()) {
+            event.finish(matchIndex.getCount(), matchIndex.getCount() > 0);
+            if (matchIndex.getCount() == 0) {
                 JOptionPane.showMessageDialog(this, "Text not found", "Find", JOptionPane.INFORMATION_MESSAGE);
                 return;
             }
+            int index = matchIndex.indexAtOrAfter(from);
+            selectMatch(index == matchIndex.getCount() ? 0 : index);
+            return;
+        }
+
+        // The index is still being built, so scan from here
+        SearchEngine engine = getSearchEngine(searchText);
+        Document doc = textArea.getDocument();
+        int startIndex;
+        try {
+            startIndex = engine.find(doc, Math.min(from, doc.getLength()));
+            if (startIndex == -1) {
+                // If not found from current position, start from beginning
+                startIndex = engine.find(doc, 0);
+            }
+        } catch (BadLocationException e) {
+            startIndex = -1;
+        }
+        event.finish(-1, startIndex != -1);
+        if (startIndex == -1) {
+            JOptionPane.showMessageDialog(this, "Text not found", "Find", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
 
         // Select the found text
         textArea.setSelectionStart(startIndex);
-        textArea.setSelectionEnd(startIndex + searchText.length());
-        lastFindPosition = startIndex + 1;
+        textArea.setSelectionEnd(startIndex + engine.length());
+    }
+
+    // Method to get a search engine for the current query and options, reusing the last one if they match
+    private SearchEngine getSearchEngine(String searchText) {
+        boolean matchCase = matchCaseCheckBox.isSelected();
+        boolean wholeWord = wholeWordCheckBox.isSelected();
+        if (searchEngine == null || !searchEngine.isFor(searchText, matchCase, wholeWord))
+            searchEngine = new SearchEngine(searchText, matchCase, wholeWord);
+        return searchEngine;
+    }
+
+    // Method to select the next regex match, starting a background search if the query or text changed
+    private void findRegex(String searchText) {
+        if (!(textArea.getDocument() instanceof EditorDocument)) {
+            JOptionPane.showMessageDialog(this, "Regular expressions are not supported for large files.",
+                "Find", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        Pattern pattern = compilePattern(searchText);
+        if (pattern == null) return;
+        if (regexSearch == null || !regexSearch.isFor(pattern)) {
+            invalidateRegexSearch();
+            regexSearch = new RegexSearchWorker((EditorDocument) textArea.getDocument(), pattern);
+            regexSearch.execute();
+        }
+        pendingFind = true;
+        selectNextMatch();
+    }
+
+    // Method to compile the query with the dialog's options, or show why it is invalid
+    private Pattern compilePattern(String searchText) {
+        String regex = searchText;
+        if (wholeWordCheckBox.isSelected())
+            regex = "(?<![\\p{L}\\p{N}_])(?:" + regex + ")(?![\\p{L}\\p{N}_])";
+        int flags = Pattern.MULTILINE;
+        if (!matchCaseCheckBox.isSelected())
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        try {
+            return Pattern.compile(regex, flags);
+        } catch (PatternSyntaxException e) {
+            JOptionPane.showMessageDialog(this, e.getDescription() + " near index " + e.getIndex(),
+                "Regular expression", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    // Method to select the first known match after the last one, once the search has got that far
+    private void selectNextMatch() {
+        if (!pendingFind || regexSearch == null) return;
+        int index = matchHighlighter.indexAfter(lastFindPosition);
+        if (index == matchHighlighter.getCount()) {
+            if (!regexSearch.finished) return; // Wait for more matches to stream in
+            if (matchHighlighter.getCount() == 0) {
+                pendingFind = false;
+                if (!regexSearch.timedOut)
+                    JOptionPane.showMessageDialog(this, "Text not found", "Find", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            index = 0; // Wrap around to the beginning
+        }
+        pendingFind = false;
+        int start = matchHighlighter.getStart(index);
+        textArea.setSelectionStart(start);
+        textArea.setSelectionEnd(matchHighlighter.getEnd(index));
+        lastFindPosition = start + 1;
+    }
+
+    // Method to drop regex results once the text they were found in has changed
+    private void invalidateRegexSearch() {
+        if (regexSearch == null) return;
+        regexSearch.cancel(true);
+        regexSearch = null;
+        pendingFind = false;
+        matchHighlighter.clear();
+        matchLabel.setText("");
+    }
+
+    // Method to expand $n, ${name} and backslash escapes in a replacement, like Matcher.appendReplacement
+    static String expandReplacement(Matcher m, String replacement) {
+        StringBuilder sb = new StringBuilder();
+        int length = replacement.length();
+        for (int i = 0; i < length; i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\' && i + 1 < length) {
+                sb.append(replacement.charAt(++i));
+            } else if (c == '$' && i + 1 < length && replacement.charAt(i + 1) == '{') {
+                int close = replacement.indexOf('}', i + 2);
+                if (close < 0)
+                    throw new IllegalArgumentException("Missing '}' in replacement");
+                String group = m.group(replacement.substring(i + 2, close));
+                if (group != null)
+                    sb.append(group);
+                i = close;
+            } else if (c == '$' && i + 1 < length && Character.isDigit(replacement.charAt(i + 1))) {
+                int group = replacement.charAt(++i) - '0';
+                // Take more digits only while they still name a group
+                while (i + 1 < length && Character.isDigit(replacement.charAt(i + 1))) {
+                    int longer = group * 10 + replacement.charAt(i + 1) - '0';
+                    if (longer > m.groupCount())
+                        break;
+                    group = longer;
+                    i++;
+                }
+                if (group > m.groupCount())
+                    throw new IllegalArgumentException("No group " + group + " in the expression");
+                String text = m.group(group);
+                if (text != null)
+                    sb.append(text);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Finds all regex matches in a snapshot and streams them to the highlighter
+    private class RegexSearchWorker extends SwingWorker<Void, int[]> {
+        private static final int BATCH = 512;
+        private static final long PUBLISH_NANOS = 100_000_000L;
+
+        private final PieceTableContent.Snapshot text;
+        private final Pattern pattern;
+        private boolean finished, timedOut;
+        private final EditorEvents.Find event = new EditorEvents.Find();
+
+        RegexSearchWorker(EditorDocument doc, Pattern pattern) {
+            this.text = doc.snapshot();
+            this.pattern = pattern;
+            matchLabel.setText("Searching...");
+            event.queryLength = pattern.pattern().length();
+            event.regex = true;
+            event.begin();
+        }
+
+        boolean isFor(Pattern other) {
+            return pattern.pattern().equals(other.pattern()) && pattern.flags() == other.flags();
+        }
+
+        @Override
+        protected Void doInBackground() {
+            TimedCharSequence input = new TimedCharSequence(text);
+            Matcher m = pattern.matcher(input);
+            int[] batch = new int[2 * BATCH];
+            int n = 0;
+            boolean first = true;
+            long lastPublish = System.nanoTime();
+            while (true) {
+                input.restart();
+                if (!m.find())
+                    break;
+                batch[n++] = m.start();
+                batch[n++] = m.end();
+                // Send the first match right away so "find" can select it, then in batches
+                if (first || n == batch.length || System.nanoTime() - lastPublish > PUBLISH_NANOS) {
+                    publish(Arrays.copyOf(batch, n));
+                    n = 0;
+                    first = false;
+                    lastPublish = System.nanoTime();
+                    setProgress((int) ((long) m.end() * 100 / Math.max(1, text.length())));
+                }
+            }
+            if (n > 0)
+                publish(Arrays.copyOf(batch, n));
+            return null;
+        }
+
+        @Override
+        protected void process(List<int[]> chunks) {
+            if (regexSearch != this) return;
+            for (int[] chunk : chunks)
+                matchHighlighter.add(chunk);
+            matchLabel.setText("Searching... " + matchHighlighter.getCount() + " matches");
+            selectNextMatch();
+        }
+
+        @Override
+        protected void done() {
+            if (regexSearch != this) return; // Superseded or cancelled
+            finished = true;
+            event.finish(matchHighlighter.getCount(), matchHighlighter.getCount() > 0);
+            try {
+                get();
+                matchLabel.setText(matchHighlighter.getCount() + " matches");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimedCharSequence.TimeoutException) {
+                    timedOut = true;
+                    matchLabel.setText(matchHighlighter.getCount() + " matches (stopped)");
+                    JOptionPane.showMessageDialog(FindReplaceDialog.this,
+                        "The expression took too long and the search was stopped.",
+                        "Find", JOptionPane.WARNING_MESSAGE);
+                } else {
+                    System.err.println("Error searching text!");
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            selectNextMatch();
+        }
+    }
+
+    // Method to search a memory-mapped file in the background, starting after the selection
+    private void findInLargeFile(LargeFileDocument doc, String searchText, EditorEvents.Find event) {
+        byte[] pattern = searchText.getBytes(doc.getCharset());
+        boolean ignoreCase = !matchCaseCheckBox.isSelected();
+        long from;
+        try {
+            from = textArea.getSelectionStart() != textArea.getSelectionEnd() ?
+                doc.toPosition(textArea.getSelectionStart()) + 1 :
+                doc.toPosition(textArea.getCaretPosition());
+        } catch (IOException e) {
+            from = doc.getWindowStart();
+        }
+        long start = from;
+
+        findButton.setEnabled(false);
+        findButton.setText("Searching...");
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                MappedFile file = doc.getMappedFile();
+                long hit = file.indexOf(pattern, start, ignoreCase);
+                if (hit == -1 && start > 0)
+                    hit = file.indexOf(pattern, 0, ignoreCase); // Wrap around to the beginning
+                return hit;
+            }
+
+            @Override
+            protected void done() {
+                findButton.setEnabled(true);
+                findButton.setText("Find");
+                try {
+                    long hit = get();
+                    event.finish(-1, hit != -1);
+                    if (hit == -1) {
+                        JOptionPane.showMessageDialog(FindReplaceDialog.this, "Text not found", "Find",
+                            JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    int offset = doc.showPosition(hit);
+                    int end = doc.toOffset(hit + pattern.length);
+                    textArea.setCaretPosition(offset);
+                    textArea.moveCaretPosition(end);
+                } catch (Exception e) {
+                    System.err.println("Error reading file!");
+                    event.finish(-1, false);
+                }
+            }
+        }.execute();
     }
 
     private void replace() {
+        if (textArea.getDocument() instanceof LargeFileDocument) return; // Read-only
         String searchText = findField.getText();
         String replaceText = replaceField.getText();
         
-        if (textArea.getSelectedText() != null && 
-            textArea.getSelectedText().equals(searchText)) {
-            textArea.replaceSelection(replaceText);
+        if (searchText.isEmpty()) return;
+
+        if (regexCheckBox.isSelected()) {
+            replaceRegex(searchText, replaceText);
+            find(); // Find next occurrence
+            return;
+        }
+
+        try {
+            if (getSearchEngine(searchText).matches(textArea.getDocument(),
+                    textArea.getSelectionStart(), textArea.getSelectionEnd())) {
+                textArea.replaceSelection(replaceText);
+            }
+        } catch (BadLocationException e) {
+            // ignore
         }
         find(); // Find next occurrence
     }
 
+    // Method to replace the selection if it is a regex match, expanding group references
+    private void replaceRegex(String searchText, String replaceText) {
+        Pattern pattern = compilePattern(searchText);
+        if (pattern == null) return;
+        int start = textArea.getSelectionStart(), end = textArea.getSelectionEnd();
+        PieceTableContent.Snapshot text = ((EditorDocument) textArea.getDocument()).snapshot();
+        Matcher m = pattern.matcher(new TimedCharSequence(text));
+        // Let lookarounds and anchors see the text around the selection
+        m.useTransparentBounds(true);
+        m.useAnchoringBounds(false);
+        m.region(start, text.length());
+        try {
+            if (m.lookingAt() && m.end() == end)
+                textArea.replaceSelection(expandReplacement(m, replaceText));
+        } catch (TimedCharSequence.TimeoutException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Replace", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Method to replace every match as one edit, finding them in the background
     private void replaceAll() {
+        if (textArea.getDocument() instanceof LargeFileDocument) return; // Read-only
+        if (replaceAllWorker != null) {
+            replaceAllWorker.cancel(true); // The button is "Cancel" while replacing
+            return;
+        }
         String searchText = findField.getText();
         String replaceText = replaceField.getText();
         if (searchText.isEmpty()) return;
 
-        String content = textArea.getText();
-        if (!matchCaseCheckBox.isSelected()) {
-            searchText = searchText.toLowerCase();
-            content = content.toLowerCase();
+        EditorDocument doc = (EditorDocument) textArea.getDocument();
+        if (regexCheckBox.isSelected()) {
+            Pattern pattern = compilePattern(searchText);
+            if (pattern == null) return;
+            replaceAllWorker = new ReplaceAllWorker(doc, null, pattern, replaceText);
+        } else {
+            replaceAllWorker = new ReplaceAllWorker(doc, new SearchEngine(searchText,
+                matchCaseCheckBox.isSelected(), wholeWordCheckBox.isSelected()), null, replaceText);
+        }
+        replaceAllButton.setText("Cancel");
+        findButton.setEnabled(false);
+        replaceButton.setEnabled(false);
+        replaceAllWorker.execute();
+    }
+
+    // Finds all matches in a snapshot and builds the replaced text, then applies it in one edit
+    private class ReplaceAllWorker extends SwingWorker<Integer, Void> implements DocumentListener {
+        private final EditorDocument doc;
+        private final PieceTableContent.Snapshot text;
+        // Either a literal search engine or a regular expression
+        private final SearchEngine engine;
+        private final Pattern pattern;
+        private final String replaceText;
+        // Span from the first match to the end of the last one, and what replaces it
+        private int start = -1, end;
+        private StringBuilder result;
+        private boolean changed;
+        private final EditorEvents.ReplaceAll event = new EditorEvents.ReplaceAll();
+
+        ReplaceAllWorker(EditorDocument doc, SearchEngine engine, Pattern pattern, String replaceText) {
+            event.queryLength = engine != null ? engine.length() : pattern.pattern().length();
+            event.regex = pattern != null;
+            event.begin();
+            this.doc = doc;
+            this.text = doc.snapshot();
+            this.engine = engine;
+            this.pattern = pattern;
+            this.replaceText = replaceText;
+            doc.addDocumentListener(this);
+            addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName()) && !isDone())
+                    replaceAllButton.setText("Cancel (" + e.getNewValue() + "%)");
+            });
         }
 
-        int count = 0;
-        int startIndex = 0;
-        while ((startIndex = content.indexOf(searchText, startIndex)) != -1) {
-            textArea.replaceRange(replaceText, startIndex, startIndex + searchText.length());
-            startIndex += replaceText.length();
-            count++;
+        @Override
+        protected Integer doInBackground() {
+            if (pattern != null)
+                return replaceRegex();
+            int count = 0;
+            int pos = 0;
+            int hit;
+            while ((hit = engine.find(text, pos)) != -1) {
+                if (isCancelled())
+                    return count;
+                appendUpTo(pos, hit);
+                result.append(replaceText);
+                pos = hit + engine.length();
+                count++;
+                setProgress((int) ((long) pos * 100 / text.length()));
+            }
+            end = pos;
+            return count;
+        }
+
+        private int replaceRegex() {
+            TimedCharSequence input = new TimedCharSequence(text);
+            Matcher m = pattern.matcher(input);
+            int count = 0;
+            int pos = 0;
+            while (true) {
+                input.restart();
+                if (!m.find())
+                    break;
+                appendUpTo(pos, m.start());
+                result.append(expandReplacement(m, replaceText));
+                pos = m.end();
+                count++;
+                setProgress((int) ((long) pos * 100 / Math.max(1, text.length())));
+            }
+            end = pos;
+            return count;
         }
 
-        JOptionPane.showMessageDialog(this, 
-            "Replaced " + count + " occurrences", 
-            "Replace All", 
-            JOptionPane.INFORMATION_MESSAGE);
+        // Method to copy the text between the previous match (ending at pos) and the next one (at hit)
+        private void appendUpTo(int pos, int hit) {
+            if (start == -1) {
+                start = hit;
+                result = new StringBuilder();
+                return;
+            }
+            Segment segment = new Segment();
+            for (int p = pos; p < hit; p += segment.count) {
+                text.getChars(p, hit - p, segment);
+                result.append(segment.array, segment.offset, segment.count);
+            }
+        }
+
+        @Override
+        protected void done() {
+            doc.removeDocumentListener(this);
+            replaceAllWorker = null;
+            replaceAllButton.setText("Replace All");
+            findButton.setEnabled(true);
+            replaceButton.setEnabled(true);
+            if (isCancelled()) {
+                event.finish("cancelled", 0);
+                return;
+            }
+            if (changed) {
+                event.finish("text changed", 0);
+                JOptionPane.showMessageDialog(FindReplaceDialog.this,
+                    "The text changed while searching. Nothing was replaced.",
+                    "Replace All", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            int count;
+            try {
+                count = get();
+                if (count > 0)
+                    apply();
+                event.finish("replaced", count);
+            } catch (ExecutionException e) {
+                event.finish("failed", 0);
+                // A regex that ran out of time or a bad group reference in the replacement
+                JOptionPane.showMessageDialog(FindReplaceDialog.this, e.getCause().getMessage(),
+                    "Replace All", JOptionPane.ERROR_MESSAGE);
+                return;
+            } catch (Exception e) {
+                System.err.println("Error replacing text!");
+                event.finish("failed", 0);
+                return;
+            }
+            lastFindPosition = 0;
+            JOptionPane.showMessageDialog(FindReplaceDialog.this,
+                "Replaced " + count + " occurrences",
+                "Replace All",
+                JOptionPane.INFORMATION_MESSAGE);
+        }
+
+        // Method to replace the whole span at once; the undo history makes its remove and insert one step
+        private void apply() throws BadLocationException {
+            doc.replace(start, end - start, result.toString(), null);
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            changed = true;
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            changed = true;
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
     }
-} 
\ No newline at end of file
+}
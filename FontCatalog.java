@@ -0,0 +1,136 @@
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import javax.swing.SwingWorker;
+
+/**
+ * The installed font families, listed in the background and cached on disk.
+ *
+ * Asking the graphics environment for every family is slow with hundreds of
+ * fonts installed, so the list is kept in ~/.notepad/fonts.cache with a
+ * fingerprint of the font directories: their paths and modification times,
+ * plus the Java version and locale. On a later start the cache is used as
+ * long as the fingerprint still matches, and is rebuilt otherwise.
+ */
+public class FontCatalog extends SwingWorker<String[], Void> {
+    private static final Path CACHE = Paths.get(System.getProperty("user.home"), ".notepad", "fonts.cache");
+    // How deep to look for subdirectories of the font directories
+    private static final int MAX_DEPTH = 3;
+
+    private final List<Runnable> waiting = new ArrayList<>();
+
+    // Method to run an action on the EDT once the families are known
+    public void whenLoaded(Runnable action) {
+        if (isDone())
+            action.run();
+        else
+            waiting.add(action);
+    }
+
+    // The family names once they are listed (see whenLoaded); never waits, so it is safe on the EDT
+    public String[] getFamilies() {
+        if (!isDone())
+            return new String[0];
+        try {
+            return get();
+        } catch (Exception e) {
+            // Listing failed, so offer the logical fonts, which every JDK has
+            return new String[] { Font.DIALOG, Font.DIALOG_INPUT, Font.MONOSPACED, Font.SANS_SERIF, Font.SERIF };
+        }
+    }
+
+    @Override
+    protected String[] doInBackground() {
+        String fingerprint = fingerprint();
+        try {
+            List<String> lines = Files.readAllLines(CACHE, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(fingerprint))
+                return lines.subList(1, lines.size()).toArray(new String[0]);
+        } catch (IOException e) {
+            // No cache yet
+        }
+        String[] families = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+        List<String> lines = new ArrayList<>();
+        lines.add(fingerprint);
+        lines.addAll(Arrays.asList(families));
+        try {
+            Files.createDirectories(CACHE.getParent());
+            Path temp = CACHE.resolveSibling(CACHE.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, CACHE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Error writing font cache!");
+        }
+        return families;
+    }
+
+    @Override
+    protected void done() {
+        for (Runnable action : waiting)
+            action.run();
+        waiting.clear();
+    }
+
+    // Method to sum up the font directories, which change whenever fonts are installed or removed
+    private static String fingerprint() {
+        CRC32 crc = new CRC32();
+        update(crc, System.getProperty("java.version") + Locale.getDefault());
+        for (Path dir : fontDirectories())
+            addDirectory(crc, dir, 0);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static void addDirectory(CRC32 crc, Path dir, int depth) {
+        File file = dir.toFile();
+        if (!file.isDirectory())
+            return;
+        update(crc, dir + ":" + file.lastModified());
+        if (depth == MAX_DEPTH)
+            return;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path entry : entries)
+                addDirectory(crc, entry, depth + 1);
+        } catch (IOException e) {
+            // Unreadable directory, its modification time is enough
+        }
+    }
+
+    private static void update(CRC32 crc, String text) {
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Path> fontDirectories() {
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        List<Path> dirs = new ArrayList<>();
+        if (os.startsWith("windows")) {
+            dirs.add(Paths.get(System.getenv().getOrDefault("WINDIR", "C:\\Windows"), "Fonts"));
+            String local = System.getenv("LOCALAPPDATA");
+            if (local != null)
+                dirs.add(Paths.get(local, "Microsoft", "Windows", "Fonts"));
+        } else if (os.startsWith("mac")) {
+            dirs.add(Paths.get("/System/Library/Fonts"));
+            dirs.add(Paths.get("/Library/Fonts"));
+            dirs.add(Paths.get(home, "Library", "Fonts"));
+        } else {
+            dirs.add(Paths.get("/usr/share/fonts"));
+            dirs.add(Paths.get("/usr/local/share/fonts"));
+            dirs.add(Paths.get(home, ".fonts"));
+            dirs.add(Paths.get(home, ".local", "share", "fonts"));
+        }
+        dirs.add(Paths.get(System.getProperty("java.home"), "lib", "fonts"));
+        return dirs;
+    }
+}
@@ -0,0 +1,146 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
+
+/**
+ * List renderer that shows each font family name in its own face.
+ *
+ * Drawing hundreds of faces while scrolling would stall the list, so names
+ * are drawn into images on a background thread, and a row only shows its
+ * image once it is ready. Only rows the list actually paints ask for an
+ * image, and a request is dropped if its row has scrolled out of view by the
+ * time the thread gets to it. Images are kept in an LRU cache whose total
+ * size stays under CACHE_BYTES. The thread and the cache are shared by every
+ * list, so opening the Font dialog again reuses the images already drawn, and
+ * the thread exits when it has been idle for a while. The cache is only used
+ * on the EDT.
+ */
+public class FontPreviewRenderer extends DefaultListCellRenderer {
+    // Upper bound on the memory held by cached images
+    public static final long CACHE_BYTES = Long.getLong("notepad.fontPreviewCache", 4L * 1024 * 1024);
+    private static final int WIDTH = 220, HEIGHT = 26;
+    private static final float SIZE = 16f;
+
+    // Images by color and family
+    private static final Map<String, ImageIcon> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private static long cacheBytes;
+    // Newest requests first, since they are the rows just scrolled to
+    private static final ThreadPoolExecutor renderer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable task) {
+                    return offerFirst(task);
+                }
+            }, task -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(task);
+                thread.setName("Font previews");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        renderer.allowCoreThreadTimeOut(true);
+    }
+
+    private final JList<String> list;
+    // Families queued or being drawn for this list, so each is only requested once
+    private final Set<String> requested = new HashSet<>();
+    // Rows visible when last painted, read by the renderer thread
+    private volatile int firstVisible, lastVisible = Integer.MAX_VALUE;
+
+    public FontPreviewRenderer(JList<String> list) {
+        this.list = list;
+        // Fixed cell sizes, so the list does not render every row to measure it
+        list.setFixedCellHeight(HEIGHT);
+        list.setFixedCellWidth(WIDTH);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+            boolean cellHasFocus) {
+        JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        String family = (String) value;
+        ImageIcon image = cache.get(key(family, list.getForeground()));
+        if (image != null) {
+            label.setIcon(image);
+            label.setText(null);
+        } else {
+            label.setIcon(null);
+            if (index >= 0)
+                request(family, index);
+        }
+        return label;
+    }
+
+    private void request(String family, int index) {
+        firstVisible = list.getFirstVisibleIndex();
+        lastVisible = list.getLastVisibleIndex();
+        if (!requested.add(family))
+            return;
+        Color color = list.getForeground();
+        renderer.execute(() -> {
+            BufferedImage image = null;
+            if (index >= firstVisible && index <= lastVisible)
+                image = draw(family, color);
+            BufferedImage drawn = image;
+            SwingUtilities.invokeLater(() -> {
+                requested.remove(family);
+                if (drawn == null)
+                    return; // Scrolled away before its turn; asked again if it comes back
+                put(key(family, color), new ImageIcon(drawn));
+                Rectangle cell = list.getCellBounds(index, index);
+                if (cell != null)
+                    list.repaint(cell);
+            });
+        });
+    }
+
+    private static String key(String family, Color color) {
+        return Integer.toHexString(color.getRGB()) + " " + family;
+    }
+
+    private static void put(String key, ImageIcon image) {
+        ImageIcon previous = cache.put(key, image);
+        if (previous != null)
+            cacheBytes -= bytes(previous);
+        cacheBytes += bytes(image);
+        Iterator<ImageIcon> eldest = cache.values().iterator();
+        while (cacheBytes > CACHE_BYTES && eldest.hasNext()) {
+            cacheBytes -= bytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long bytes(ImageIcon image) {
+        return 4L * image.getIconWidth() * image.getIconHeight();
+    }
+
+    // Method to draw the family's name in its own face, falling back to the default face for symbol fonts
+    private static BufferedImage draw(String family, Color color) {
+        Font font = new Font(family, Font.PLAIN, 1).deriveFont(SIZE);
+        if (font.canDisplayUpTo(family) != -1)
+            font = new Font(Font.DIALOG, Font.PLAIN, 1).deriveFont(SIZE);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(color);
+        FontMetrics metrics = g.getFontMetrics();
+        g.drawString(family, 2, (HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent());
+        g.dispose();
+        return image;
+    }
+}
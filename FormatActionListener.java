@@ -76,8 +76,15 @@ public class FormatActionListener implements ActionListener {
             // Font list panel
             JPanel fontPanel = new JPanel(new BorderLayout());
             fontPanel.setBorder(BorderFactory.createTitledBorder("Font"));
-            fontList = new JList<>(notepad.fonts);
-            fontList.setSelectedValue(currentFont.getFamily(), true);
+            fontList = new JList<>(new String[] { "Loading fonts..." });
+            fontList.setEnabled(false);
+            notepad.fonts.whenLoaded(() -> {
+                // Filled in once the families are listed, so opening the dialog never waits for them
+                fontList.setListData(notepad.fonts.getFamilies());
+                fontList.setCellRenderer(new FontPreviewRenderer(fontList)); // Each name in its own face
+                fontList.setEnabled(true);
+                fontList.setSelectedValue(currentFont.getFamily(), true);
+            });
             fontPanel.add(new JScrollPane(fontList), BorderLayout.CENTER);
 
             // Style and size panel
@@ -265,24 +272,29 @@ public class FormatActionListener implements ActionListener {
                 style,
                 sizeList.getSelectedValue()
             );
-            if (notepad.textarea != null) {
-                notepad.textarea.setFont(currentFont);
-            }
+            applyFont();
         }
     }
 
     private void updateFont(int size) {
         currentFont = currentFont.deriveFont((float)size);
-        if (notepad.textarea != null) {
-            notepad.textarea.setFont(currentFont);
-        }
+        applyFont();
     }
 
     private void updateFontStyle(int style) {
         int newStyle = currentFont.getStyle() ^ style;
         currentFont = currentFont.deriveFont(newStyle);
-        if (notepad.textarea != null) {
-            notepad.textarea.setFont(currentFont);
-        }
+        applyFont();
+    }
+
+    // Method to show the text in currentFont, which relays out all of it
+    private void applyFont() {
+        if (notepad.textarea == null)
+            return;
+        String style = currentFont.isBold() ? (currentFont.isItalic() ? "Bold Italic" : "Bold")
+                : currentFont.isItalic() ? "Italic" : "Regular";
+        EditorEvents.relayout(notepad.textarea,
+                "Font " + currentFont.getFamily() + " " + style + " " + currentFont.getSize(),
+                () -> notepad.textarea.setFont(currentFont));
     }
 }
@@ -123,7 +123,7 @@ public class HelpActionListener implements ActionListener {
             {"Ctrl + Shift + S", "Save As"},
             {"Ctrl + P", "Print"},
             {"Alt + F4", "Close"},
-            {"Ctrl + W", "Close Current File"}
+            {"Ctrl + F4", "Close Tab"}
         });
 
         addShortcutSection(shortcutsPanel, "Edit Operations", new String[][] {
@@ -136,7 +136,8 @@ public class HelpActionListener implements ActionListener {
             {"Ctrl + A", "Select All"},
             {"Alt + F", "Insert Time/Date"},
             {"Ctrl + F", "Find"},
-            {"Ctrl + H", "Replace"}
+            {"Ctrl + H", "Replace"},
+            {"Ctrl + Shift + F", "Find in Files"}
         });
 
         addShortcutSection(shortcutsPanel, "Text Formatting", new String[][] {
@@ -154,6 +155,7 @@ public class HelpActionListener implements ActionListener {
             {"Ctrl + W", "Toggle Word Wrap"},
             {"Ctrl + L", "Toggle Line Numbers"},
             {"Ctrl + D", "Toggle Status Bar"},
+            {"Ctrl + Shift + P", "Toggle Performance HUD"},
             {"Ctrl + M", "Toggle Dark Mode"}
         });
 
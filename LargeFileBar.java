@@ -0,0 +1,150 @@
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.io.IOException;
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Navigation bar shown under the text area while a large file is open.
+ *
+ * It pages the LargeFileDocument window back and forth, jumps to any position
+ * with a slider, and turns the window automatically when the mouse wheel is
+ * used past the top or bottom of the current window.
+ */
+public class LargeFileBar extends JPanel implements MouseWheelListener {
+    private static final int SLIDER_STEPS = 1000;
+
+    private final Notepad notepad;
+    private final LargeFileDocument doc;
+    private final JLabel rangeLabel;
+    private final JSlider slider;
+    private boolean updating;
+
+    public LargeFileBar(Notepad notepad, LargeFileDocument doc) {
+        super(new BorderLayout(5, 0));
+        this.notepad = notepad;
+        this.doc = doc;
+        setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+
+        JButton previous = new JButton("Previous");
+        previous.setFocusPainted(false);
+        previous.addActionListener(e -> previousWindow());
+        JButton next = new JButton("Next");
+        next.setFocusPainted(false);
+        next.addActionListener(e -> nextWindow());
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        buttons.add(new JLabel("Read-only view"));
+        buttons.add(previous);
+        buttons.add(next);
+        add(buttons, BorderLayout.WEST);
+
+        slider = new JSlider(0, SLIDER_STEPS, 0);
+        slider.addChangeListener(e -> {
+            if (!updating && !slider.getValueIsAdjusting())
+                jumpTo(doc.getFileLength() * slider.getValue() / SLIDER_STEPS);
+        });
+        add(slider, BorderLayout.CENTER);
+
+        rangeLabel = new JLabel();
+        add(rangeLabel, BorderLayout.EAST);
+        updateLabels();
+
+        // Every window swap replaces the document text, so refresh the labels then
+        doc.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateLabels();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    // Method to show the window containing byte position pos with that position at the top
+    public void jumpTo(long pos) {
+        try {
+            int offset = doc.showPosition(pos);
+            notepad.textarea.setCaretPosition(offset);
+            scrollToTop(offset);
+        } catch (IOException e) {
+            System.err.println("Error reading file!");
+        }
+    }
+
+    private void nextWindow() {
+        if (doc.getWindowEnd() >= doc.getFileLength())
+            return;
+        try {
+            // Continue from the first visible line so the view does not jump
+            long top = doc.toPosition(firstVisibleOffset());
+            doc.showWindow(Math.max(top, doc.getWindowStart() + 1));
+            notepad.textarea.setCaretPosition(0);
+            scrollToTop(0);
+        } catch (IOException e) {
+            System.err.println("Error reading file!");
+        }
+    }
+
+    private void previousWindow() {
+        if (doc.getWindowStart() == 0)
+            return;
+        try {
+            long oldStart = doc.getWindowStart();
+            doc.showWindow(Math.max(0, oldStart - (doc.getWindowEnd() - oldStart) / 2));
+            // Keep the old first line just below the visible area
+            int offset = doc.toOffset(oldStart);
+            notepad.textarea.setCaretPosition(offset);
+            Rectangle r = notepad.textarea.modelToView2D(offset).getBounds();
+            Rectangle visible = notepad.textarea.getVisibleRect();
+            notepad.textarea.scrollRectToVisible(new Rectangle(0, Math.max(0, r.y - visible.height),
+                    1, visible.height));
+        } catch (IOException | BadLocationException e) {
+            System.err.println("Error reading file!");
+        }
+    }
+
+    private int firstVisibleOffset() {
+        Rectangle visible = notepad.textarea.getVisibleRect();
+        return notepad.textarea.viewToModel2D(new Point(0, visible.y));
+    }
+
+    private void scrollToTop(int offset) {
+        try {
+            Rectangle r = notepad.textarea.modelToView2D(offset).getBounds();
+            Rectangle visible = notepad.textarea.getVisibleRect();
+            notepad.textarea.scrollRectToVisible(new Rectangle(0, r.y, 1, visible.height));
+        } catch (BadLocationException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        JScrollBar bar = ((JScrollPane) e.getComponent()).getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum();
+        boolean atTop = bar.getValue() == bar.getMinimum();
+        if (e.getWheelRotation() > 0 && atBottom)
+            SwingUtilities.invokeLater(this::nextWindow);
+        else if (e.getWheelRotation() < 0 && atTop)
+            SwingUtilities.invokeLater(this::previousWindow);
+    }
+
+    private void updateLabels() {
+        long length = doc.getFileLength();
+        rangeLabel.setText(String.format("Bytes %,d - %,d of %,d",
+                doc.getWindowStart(), doc.getWindowEnd(), length));
+        updating = true;
+        slider.setValue(length == 0 ? 0 : (int) (doc.getWindowStart() * SLIDER_STEPS / length));
+        updating = false;
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DocumentFilter;
+import javax.swing.text.PlainDocument;
+
+/**
+ * Read-only document that shows a window of a memory-mapped file.
+ *
+ * Swing documents use int offsets, so a multi-gigabyte file cannot be one
+ * document. Instead only a window of about WINDOW_BYTES around the current
+ * position is decoded into the document, and moving through the file swaps the
+ * window. Heap use stays at one window no matter how large the file is.
+ * Windows are aligned to line starts so that multi-byte characters are never
+ * split (a '\n' byte cannot occur inside a UTF-8 sequence).
+ */
+public class LargeFileDocument extends PlainDocument {
+    // Files above this size (in bytes) are opened in the read-only viewer
+    public static final long THRESHOLD = Long.getLong("notepad.largeFileThreshold", 256L * 1024 * 1024);
+
+    private static final int WINDOW_BYTES = 2 * 1024 * 1024;
+    // How far to look for a line boundary before cutting a window mid-line
+    private static final int LINE_LIMIT = 64 * 1024;
+
+    private final File file;
+    private final MappedFile mapped;
+    private final Charset charset;
+    private long windowStart, windowEnd;
+    private boolean loading;
+
+    public LargeFileDocument(File file, Charset charset) throws IOException {
+        this.file = file;
+        this.mapped = new MappedFile(file);
+        this.charset = charset;
+        putProperty(FileLoader.CHARSET_PROPERTY, charset);
+        setDocumentFilter(new ReadOnlyFilter());
+        showWindow(0);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileLength() {
+        return mapped.length();
+    }
+
+    public long getWindowStart() {
+        return windowStart;
+    }
+
+    public long getWindowEnd() {
+        return windowEnd;
+    }
+
+    public MappedFile getMappedFile() {
+        return mapped;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    // Method to decode the window starting at the line containing byte position pos
+    public void showWindow(long pos) throws IOException {
+        pos = Math.max(0, Math.min(pos, mapped.length()));
+        long start = mapped.lineStart(pos, LINE_LIMIT);
+        long end = Math.min(mapped.length(), start + WINDOW_BYTES);
+        if (end < mapped.length())
+            end = mapped.lineEnd(end, LINE_LIMIT);
+        String text = decode(start, (int) (end - start));
+
+        // Set the range first so document listeners see the new window
+        windowStart = start;
+        windowEnd = end;
+        loading = true;
+        try {
+            replace(0, getLength(), text, null);
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        } finally {
+            loading = false;
+        }
+    }
+
+    // Method to show the window around pos and return the document offset that pos maps to
+    public int showPosition(long pos) throws IOException {
+        if (pos < windowStart || pos >= windowEnd || (pos > windowEnd - LINE_LIMIT && windowEnd < mapped.length()))
+            showWindow(Math.max(0, pos - WINDOW_BYTES / 4));
+        return toOffset(pos);
+    }
+
+    // Method to map a byte position inside the window to a document offset
+    public int toOffset(long pos) throws IOException {
+        pos = Math.max(windowStart, Math.min(pos, windowEnd));
+        return decode(windowStart, (int) (pos - windowStart)).length();
+    }
+
+    // Method to map a document offset to its byte position in the file (approximate for "\r\n" files)
+    public long toPosition(int offset) throws IOException {
+        try {
+            String prefix = getText(0, Math.min(offset, getLength()));
+            CharsetEncoder encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return windowStart + encoder.encode(CharBuffer.wrap(prefix)).remaining();
+        } catch (BadLocationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private String decode(long pos, int len) throws IOException {
+        ByteBuffer bytes = mapped.slice(pos, len);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            // Drop carriage returns so "\r\n" files show as plain lines
+            String text = decoder.decode(bytes).toString();
+            return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+        } catch (CharacterCodingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Method to release the mapped file
+    public void close() {
+        try {
+            mapped.close();
+        } catch (IOException e) {
+            System.err.println("Error closing file!");
+        }
+    }
+
+    // Filter that rejects every edit except window swaps
+    private class ReadOnlyFilter extends DocumentFilter {
+        @Override
+        public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+            if (loading)
+                fb.remove(offset, length);
+        }
+
+        @Override
+        public void insertString(FilterBypass fb, int offset, String text, AttributeSet attrs)
+                throws BadLocationException {
+            if (loading)
+                fb.insertString(offset, text, attrs);
+        }
+
+        @Override
+        public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+                throws BadLocationException {
+            if (loading)
+                fb.replace(offset, length, text, attrs);
+        }
+    }
+}
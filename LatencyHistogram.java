@@ -0,0 +1,116 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, of a fixed size however many values
+ * it holds.
+ *
+ * Each power of two is split into SUB_BUCKETS buckets, so a value is counted
+ * within about 3% of what it was, from nanoseconds to hours. Recording is a
+ * few atomic increments and never locks, so it can be done from any thread,
+ * the EDT included. Reads taken while others record may be off by the values
+ * being recorded at that moment.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Enough buckets for any positive long
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Method to count one latency of nanos
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long seen;
+        while (nanos > (seen = max.get()) && !max.compareAndSet(seen, nanos))
+            ;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    // The latency that fraction (0 to 1) of the values are at or below, to within a bucket; 0 when empty
+    public long getPercentile(double fraction) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    // Number of values at or below nanos, to within a bucket
+    public long getCountAtOrBelow(long nanos) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= nanos; i++)
+            n += counts.get(i);
+        return n;
+    }
+
+    // Method to forget every value recorded so far
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    // Method to write a one-line summary in milliseconds
+    public String summary() {
+        return String.format("n=%d p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f ms", getCount(),
+                getPercentile(0.5) / 1e6, getPercentile(0.9) / 1e6, getPercentile(0.99) / 1e6,
+                getPercentile(0.999) / 1e6, getMax() / 1e6);
+    }
+
+    // Method to print each non-empty bucket as its upper bound in nanoseconds and its count, for comparing runs
+    public void dump(PrintStream out) {
+        out.println("# upper_bound_ns count");
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n > 0)
+                out.println(upperBound(i) + " " + n);
+        }
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // The largest value that falls in bucket i
+    private static long upperBound(int i) {
+        if (i < SUB_BUCKETS)
+            return i;
+        int exponent = i / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + i % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
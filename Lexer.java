@@ -0,0 +1,23 @@
+/**
+ * Tokenizer for one language, used by SyntaxHighlighter.
+ *
+ * A lexer works one line at a time. Whatever it has to carry from one line to
+ * the next (being inside a block comment, say) goes in the state it returns,
+ * which is passed back in for the next line; the first line starts in state 0.
+ * The highlighter stops relexing after an edit as soon as a line starts in
+ * the same state as before, so the state must say everything the lexer needs.
+ * Lexers are shared between threads and must not keep anything in fields.
+ */
+public interface Lexer {
+    // Token types
+    int TEXT = 0, KEYWORD = 1, STRING = 2, NUMBER = 3, COMMENT = 4, NAME = 5;
+
+    // Receives the tokens of a line in order; text between tokens is TEXT
+    interface TokenSink {
+        void token(int start, int end, int type);
+    }
+
+    // Method to lex text[start, end), one line without its newline, and return the state the next line starts in.
+    // out is null when only the state is wanted, so lexers can skip work that does not affect it.
+    int lex(char[] text, int start, int end, int state, TokenSink out);
+}
@@ -0,0 +1,378 @@
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The lexers for the file types Notepad highlights: Java, JSON, YAML, XML and
+ * properties files.
+ *
+ * They are deliberately simple. Each recognizes comments, strings, numbers,
+ * keywords and names (keys, tag and attribute names) well enough to color
+ * them, and carries only what spans lines, such as block comments, in its
+ * state.
+ */
+public final class Lexers {
+    public static final Lexer JAVA = new JavaLexer();
+    public static final Lexer JSON = new JsonLexer();
+    public static final Lexer YAML = new YamlLexer();
+    public static final Lexer XML = new XmlLexer();
+    public static final Lexer PROPERTIES = new PropertiesLexer();
+
+    private Lexers() {
+    }
+
+    // Method to pick the lexer for a file by its extension, or null if it is not highlighted
+    public static Lexer forFile(String name) {
+        if (name == null || name.lastIndexOf('.') < 0)
+            return null;
+        switch (name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT)) {
+            case "java":
+                return JAVA;
+            case "json":
+                return JSON;
+            case "yaml":
+            case "yml":
+                return YAML;
+            case "xml":
+            case "xsd":
+            case "xsl":
+            case "xslt":
+            case "svg":
+            case "pom":
+                return XML;
+            case "properties":
+                return PROPERTIES;
+            default:
+                return null;
+        }
+    }
+
+    private static void emit(Lexer.TokenSink out, int start, int end, int type) {
+        if (out != null && end > start)
+            out.token(start, end, type);
+    }
+
+    // Index of the first occurrence of pattern in text[from, end), or -1
+    private static int find(char[] text, int from, int end, String pattern) {
+        outer:
+        for (int i = from; i + pattern.length() <= end; i++) {
+            for (int k = 0; k < pattern.length(); k++) {
+                if (text[i + k] != pattern.charAt(k))
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(char[] text, int i, int end, String prefix) {
+        return i + prefix.length() <= end && find(text, i, i + prefix.length(), prefix) == i;
+    }
+
+    // Index just past the quote closing a string that starts at from, or end if it is not closed on this line
+    private static int quoteEnd(char[] text, int from, int end, char quote) {
+        for (int i = from; i < end; i++) {
+            if (text[i] == '\\')
+                i++;
+            else if (text[i] == quote)
+                return i + 1;
+        }
+        return end;
+    }
+
+    private static int skipSpaces(char[] text, int i, int end) {
+        while (i < end && (text[i] == ' ' || text[i] == '\t'))
+            i++;
+        return i;
+    }
+
+    private static final class JavaLexer implements Lexer {
+        private static final int IN_COMMENT = 1, IN_TEXT_BLOCK = 2;
+        private static final Set<String> KEYWORDS = Set.of("abstract", "assert", "boolean", "break", "byte", "case",
+                "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends",
+                "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+                "interface", "long", "native", "new", "package", "private", "protected", "public", "return", "short",
+                "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try",
+                "void", "volatile", "while", "var", "record", "yield", "sealed", "permits", "true", "false", "null");
+
+        @Override
+        public int lex(char[] text, int start, int end, int state, TokenSink out) {
+            int i = start;
+            if (state == IN_COMMENT || state == IN_TEXT_BLOCK) {
+                String close = state == IN_COMMENT ? "*/" : "\"\"\"";
+                int type = state == IN_COMMENT ? COMMENT : STRING;
+                int at = find(text, i, end, close);
+                if (at < 0) {
+                    emit(out, i, end, type);
+                    return state;
+                }
+                emit(out, i, at + close.length(), type);
+                i = at + close.length();
+            }
+            while (i < end) {
+                char c = text[i];
+                if (c == '/' && i + 1 < end && text[i + 1] == '/') {
+                    emit(out, i, end, COMMENT);
+                    return 0;
+                } else if (c == '/' && i + 1 < end && text[i + 1] == '*') {
+                    int at = find(text, i + 2, end, "*/");
+                    if (at < 0) {
+                        emit(out, i, end, COMMENT);
+                        return IN_COMMENT;
+                    }
+                    emit(out, i, at + 2, COMMENT);
+                    i = at + 2;
+                } else if (startsWith(text, i, end, "\"\"\"")) {
+                    int at = find(text, i + 3, end, "\"\"\"");
+                    if (at < 0) {
+                        emit(out, i, end, STRING);
+                        return IN_TEXT_BLOCK;
+                    }
+                    emit(out, i, at + 3, STRING);
+                    i = at + 3;
+                } else if (c == '"' || c == '\'') {
+                    int close = quoteEnd(text, i + 1, end, c);
+                    emit(out, i, close, STRING);
+                    i = close;
+                } else if (Character.isDigit(c)) {
+                    int j = i + 1;
+                    while (j < end && (Character.isLetterOrDigit(text[j]) || text[j] == '.' || text[j] == '_'))
+                        j++;
+                    emit(out, i, j, NUMBER);
+                    i = j;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int j = i + 1;
+                    while (j < end && Character.isJavaIdentifierPart(text[j]))
+                        j++;
+                    if (out != null && KEYWORDS.contains(new String(text, i, j - i)))
+                        out.token(i, j, KEYWORD);
+                    i = j;
+                } else {
+                    i++;
+                }
+            }
+            return 0;
+        }
+    }
+
+    // Nothing in JSON spans lines, so the state is always 0
+    private static final class JsonLexer implements Lexer {
+        @Override
+        public int lex(char[] text, int start, int end, int state, TokenSink out) {
+            if (out == null)
+                return 0;
+            int i = start;
+            while (i < end) {
+                char c = text[i];
+                if (c == '"') {
+                    int close = quoteEnd(text, i + 1, end, '"');
+                    int after = skipSpaces(text, close, end);
+                    out.token(i, close, after < end && text[after] == ':' ? NAME : STRING);
+                    i = close;
+                } else if (c == '-' || Character.isDigit(c)) {
+                    int j = i + 1;
+                    while (j < end && (Character.isDigit(text[j]) || "+-.eE".indexOf(text[j]) >= 0))
+                        j++;
+                    out.token(i, j, NUMBER);
+                    i = j;
+                } else if (Character.isLetter(c)) {
+                    int j = i + 1;
+                    while (j < end && Character.isLetter(text[j]))
+                        j++;
+                    String word = new String(text, i, j - i);
+                    if (word.equals("true") || word.equals("false") || word.equals("null"))
+                        out.token(i, j, KEYWORD);
+                    i = j;
+                } else {
+                    i++;
+                }
+            }
+            return 0;
+        }
+    }
+
+    // Block scalars and multi-line flow collections are colored line by line, so the state is always 0
+    private static final class YamlLexer implements Lexer {
+        private static final Set<String> KEYWORDS = Set.of("true", "false", "yes", "no", "on", "off", "null", "~");
+
+        @Override
+        public int lex(char[] text, int start, int end, int state, TokenSink out) {
+            if (out == null)
+                return 0;
+            int i = skipSpaces(text, start, end);
+            if (i == start && (startsWith(text, i, end, "---") || startsWith(text, i, end, "..."))) {
+                out.token(i, i + 3, KEYWORD);
+                i = skipSpaces(text, i + 3, end);
+            }
+            while (i < end && text[i] == '-' && (i + 1 == end || text[i + 1] == ' '))
+                i = skipSpaces(text, i + 1, end); // Sequence entries
+            int key = keyEnd(text, i, end);
+            if (key > i) {
+                out.token(i, key, NAME);
+                i = key + 1;
+            }
+            while (i < end) {
+                char c = text[i];
+                if (c == '#' && (i == start || text[i - 1] == ' ' || text[i - 1] == '\t')) {
+                    out.token(i, end, COMMENT);
+                    return 0;
+                } else if (c == '"' || c == '\'') {
+                    int close = quoteEnd(text, i + 1, end, c);
+                    out.token(i, close, STRING);
+                    i = close;
+                } else if (c == ' ' || c == '\t' || ",[]{}".indexOf(c) >= 0) {
+                    i++;
+                } else {
+                    int j = i + 1;
+                    while (j < end && text[j] != ' ' && text[j] != '\t' && ",[]{}".indexOf(text[j]) < 0)
+                        j++;
+                    String word = new String(text, i, j - i);
+                    if (KEYWORDS.contains(word.toLowerCase(Locale.ROOT)))
+                        out.token(i, j, KEYWORD);
+                    else if (isNumber(word))
+                        out.token(i, j, NUMBER);
+                    i = j;
+                }
+            }
+            return 0;
+        }
+
+        // Index of the colon ending a mapping key that starts at from, or from if there is none
+        private static int keyEnd(char[] text, int from, int end) {
+            int i = from;
+            if (i < end && (text[i] == '"' || text[i] == '\''))
+                i = quoteEnd(text, i + 1, end, text[i]);
+            for (; i < end; i++) {
+                char c = text[i];
+                if (c == ':' && (i + 1 == end || text[i + 1] == ' ' || text[i + 1] == '\t'))
+                    return i;
+                if (c == '#' || c == '"' || c == '\'' || c == '{' || c == '[')
+                    break;
+            }
+            return from;
+        }
+
+        private static boolean isNumber(String word) {
+            try {
+                Double.parseDouble(word);
+                return !word.endsWith("d") && !word.endsWith("f") && !word.endsWith("D") && !word.endsWith("F");
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class XmlLexer implements Lexer {
+        private static final int IN_TEXT = 0, IN_COMMENT = 1, IN_CDATA = 2, IN_TAG = 3, IN_DOUBLE = 4, IN_SINGLE = 5;
+
+        @Override
+        public int lex(char[] text, int start, int end, int state, TokenSink out) {
+            int i = start;
+            if (state == IN_COMMENT || state == IN_CDATA) {
+                String close = state == IN_COMMENT ? "-->" : "]]>";
+                int at = find(text, i, end, close);
+                if (at < 0) {
+                    emit(out, i, end, state == IN_COMMENT ? COMMENT : STRING);
+                    return state;
+                }
+                emit(out, i, at + 3, state == IN_COMMENT ? COMMENT : STRING);
+                i = at + 3;
+                state = IN_TEXT;
+            } else if (state == IN_DOUBLE || state == IN_SINGLE) {
+                // XML has no escapes in attribute values, so the next quote closes it
+                int at = find(text, i, end, state == IN_DOUBLE ? "\"" : "'");
+                if (at < 0) {
+                    emit(out, i, end, STRING);
+                    return state;
+                }
+                emit(out, i, at + 1, STRING);
+                i = at + 1;
+                state = IN_TAG;
+            }
+            while (i < end) {
+                char c = text[i];
+                if (state == IN_TEXT) {
+                    if (startsWith(text, i, end, "<!--") || startsWith(text, i, end, "<![CDATA[")) {
+                        boolean comment = text[i + 2] == '-';
+                        int at = find(text, i + 4, end, comment ? "-->" : "]]>");
+                        if (at < 0) {
+                            emit(out, i, end, comment ? COMMENT : STRING);
+                            return comment ? IN_COMMENT : IN_CDATA;
+                        }
+                        emit(out, i, at + 3, comment ? COMMENT : STRING);
+                        i = at + 3;
+                    } else if (c == '<') {
+                        int j = i + 1;
+                        if (j < end && (text[j] == '/' || text[j] == '?' || text[j] == '!'))
+                            j++;
+                        j = nameEnd(text, j, end);
+                        emit(out, i, j, KEYWORD);
+                        i = j;
+                        state = IN_TAG;
+                    } else if (c == '&') {
+                        int j = i + 1;
+                        while (j < end && j - i < 12 && text[j] != ';' && text[j] != '<')
+                            j++;
+                        if (j < end && text[j] == ';')
+                            emit(out, i, j + 1, NUMBER);
+                        i = j;
+                    } else {
+                        i++;
+                    }
+                } else if (c == '>') {
+                    emit(out, i, i + 1, KEYWORD);
+                    i++;
+                    state = IN_TEXT;
+                } else if (c == '"' || c == '\'') {
+                    int at = find(text, i + 1, end, String.valueOf(c));
+                    if (at < 0) {
+                        emit(out, i, end, STRING);
+                        return c == '"' ? IN_DOUBLE : IN_SINGLE;
+                    }
+                    emit(out, i, at + 1, STRING);
+                    i = at + 1;
+                } else if (isNameStart(c)) {
+                    int j = nameEnd(text, i, end);
+                    emit(out, i, j, NAME);
+                    i = j;
+                } else {
+                    i++;
+                }
+            }
+            return state;
+        }
+
+        private static boolean isNameStart(char c) {
+            return Character.isLetter(c) || c == '_' || c == ':';
+        }
+
+        private static int nameEnd(char[] text, int i, int end) {
+            while (i < end && (isNameStart(text[i]) || Character.isDigit(text[i]) || text[i] == '-' || text[i] == '.'))
+                i++;
+            return i;
+        }
+    }
+
+    private static final class PropertiesLexer implements Lexer {
+        // The previous line ended in a backslash, so this one continues its value
+        private static final int CONTINUED = 1;
+
+        @Override
+        public int lex(char[] text, int start, int end, int state, TokenSink out) {
+            if (state != CONTINUED) {
+                int i = skipSpaces(text, start, end);
+                if (i < end && (text[i] == '#' || text[i] == '!')) {
+                    emit(out, i, end, COMMENT);
+                    return 0; // A comment never continues
+                }
+                int key = i;
+                while (key < end && text[key] != '=' && text[key] != ':' && text[key] != ' ' && text[key] != '\t')
+                    key += text[key] == '\\' ? 2 : 1;
+                emit(out, i, Math.min(key, end), NAME);
+            }
+            int backslashes = 0;
+            for (int i = end - 1; i >= start && text[i] == '\\'; i--)
+                backslashes++;
+            return backslashes % 2 == 1 ? CONTINUED : 0;
+        }
+    }
+}
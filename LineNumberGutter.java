@@ -0,0 +1,192 @@
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/**
+ * Line numbers for a text area, shown as the row header of its scroll pane.
+ *
+ * Only the lines inside the clip are painted. The first one is found with a
+ * binary search over the document's root element (getElementIndex), so the
+ * cost does not depend on how long the document is. The width is cached per
+ * number of digits. An edit that adds or removes lines repaints from the
+ * edited line down to the bottom of the view, and an edit within a line
+ * repaints nothing, since no number changes.
+ */
+public class LineNumberGutter extends JComponent implements DocumentListener, PropertyChangeListener {
+    private static final int PADDING = 8;
+    private static final int MIN_DIGITS = 3;
+
+    private final JTextArea textarea;
+    private Document doc;
+    // Width for each digit count, computed on first use for the current font
+    private final int[] widths = new int[11];
+    private int digits;
+    // First line whose number changed since the last repaint, or -1
+    private int dirtyLine = -1;
+
+    private final ComponentAdapter resizeListener = new ComponentAdapter() {
+        @Override
+        public void componentResized(ComponentEvent e) {
+            revalidate(); // Follow the text area's height
+        }
+    };
+
+    public LineNumberGutter(JTextArea textarea) {
+        this.textarea = textarea;
+        setFont(textarea.getFont());
+        setForeground(new Color(120, 120, 120));
+        setBackground(textarea.getBackground());
+        setOpaque(true);
+        setBorder(BorderFactory.createEmptyBorder(0, PADDING, 0, PADDING / 2));
+        textarea.addPropertyChangeListener(this);
+        textarea.addComponentListener(resizeListener);
+        setDocument(textarea.getDocument());
+    }
+
+    // Method to stop following the text area
+    public void dispose() {
+        textarea.removePropertyChangeListener(this);
+        textarea.removeComponentListener(resizeListener);
+        setDocument(null);
+    }
+
+    private void setDocument(Document next) {
+        if (doc != null)
+            doc.removeDocumentListener(this);
+        doc = next;
+        if (doc != null)
+            doc.addDocumentListener(this);
+        digits = digitsFor(lineCount());
+        revalidate();
+        repaint();
+    }
+
+    private int lineCount() {
+        return doc != null ? doc.getDefaultRootElement().getElementCount() : 1;
+    }
+
+    private static int digitsFor(int lines) {
+        return Math.max(MIN_DIGITS, Integer.toString(lines).length());
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (widths[digits] == 0) {
+            Insets insets = getInsets();
+            widths[digits] = getFontMetrics(getFont()).charWidth('0') * digits + insets.left + insets.right;
+        }
+        return new Dimension(widths[digits], textarea.getHeight());
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent e) {
+        switch (e.getPropertyName()) {
+            case "document":
+                setDocument((Document) e.getNewValue());
+                break;
+            case "font":
+                setFont((Font) e.getNewValue());
+                Arrays.fill(widths, 0);
+                revalidate();
+                repaint();
+                break;
+            case "background":
+                setBackground((Color) e.getNewValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (doc == null)
+            return;
+        g.setColor(getForeground());
+        FontMetrics metrics = g.getFontMetrics(getFont());
+        int right = getWidth() - getInsets().right;
+        Element root = doc.getDefaultRootElement();
+        int count = root.getElementCount();
+        int first = root.getElementIndex(textarea.viewToModel2D(new Point(0, clip.y)));
+        try {
+            for (int line = first; line < count; line++) {
+                Rectangle2D r = textarea.modelToView2D(root.getElement(line).getStartOffset());
+                if (r == null || r.getY() > clip.y + clip.height)
+                    break;
+                String number = Integer.toString(line + 1);
+                g.drawString(number, right - metrics.stringWidth(number), (int) r.getY() + metrics.getAscent());
+            }
+        } catch (BadLocationException e) {
+            // The document changed while painting; the next repaint catches up
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        linesChanged(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    // Method to schedule a repaint of the numbers from the edited line down, if the line count changed
+    private void linesChanged(DocumentEvent e) {
+        Element root = doc.getDefaultRootElement();
+        if (e.getChange(root) == null && !textarea.getLineWrap())
+            return; // Edited within one line: every number stays where it is
+        int line = root.getElementIndex(e.getOffset());
+        if (dirtyLine == -1) {
+            // Wait until the text area's views have caught up with the edit
+            SwingUtilities.invokeLater(this::repaintDirtyLines);
+            dirtyLine = line;
+        } else {
+            dirtyLine = Math.min(dirtyLine, line);
+        }
+    }
+
+    private void repaintDirtyLines() {
+        int line = dirtyLine;
+        dirtyLine = -1;
+        int lines = lineCount();
+        if (digitsFor(lines) != digits) {
+            digits = digitsFor(lines);
+            revalidate();
+            repaint();
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        int y = visible.y;
+        try {
+            Element root = doc.getDefaultRootElement();
+            Rectangle2D r = textarea.modelToView2D(root.getElement(Math.min(line, lines - 1)).getStartOffset());
+            if (r != null)
+                y = Math.max(y, (int) r.getY());
+        } catch (BadLocationException e) {
+            // Repaint everything visible instead
+        }
+        if (y < visible.y + visible.height)
+            repaint(visible.x, y, visible.width, visible.y + visible.height - y);
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only, memory-mapped view of a file of any size.
+ *
+ * A single MappedByteBuffer is limited to 2 GB, so the file is mapped in
+ * regions that overlap by MAX_SLICE bytes. Any slice of up to MAX_SLICE bytes
+ * therefore lies inside one region and can be handed out without copying.
+ * Regions are mapped lazily, and pages are only read in by the OS when touched.
+ */
+public class MappedFile implements Closeable {
+    public static final int MAX_SLICE = 16 * 1024 * 1024;
+    private static final long REGION = 1L << 30;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long length;
+    private final MappedByteBuffer[] regions;
+
+    public MappedFile(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        length = channel.size();
+        regions = new MappedByteBuffer[(int) ((length + REGION - 1) / REGION)];
+    }
+
+    public long length() {
+        return length;
+    }
+
+    // Method to get a read-only slice of at most MAX_SLICE bytes starting at pos
+    public ByteBuffer slice(long pos, int len) throws IOException {
+        if (pos < 0 || len < 0 || len > MAX_SLICE || pos + len > length)
+            throw new IndexOutOfBoundsException("slice " + pos + "+" + len + " of " + length);
+        int index = (int) (pos / REGION);
+        MappedByteBuffer region = region(index);
+        int start = (int) (pos - index * REGION);
+        return region.duplicate().position(start).limit(start + len).slice();
+    }
+
+    public byte get(long pos) throws IOException {
+        int index = (int) (pos / REGION);
+        return region(index).get((int) (pos - index * REGION));
+    }
+
+    // Method to find the start of the line containing pos, looking back at most 'limit' bytes
+    public long lineStart(long pos, int limit) throws IOException {
+        long stop = Math.max(0, pos - limit);
+        for (long p = pos; p > stop; p--) {
+            if (get(p - 1) == '\n')
+                return p;
+        }
+        return stop;
+    }
+
+    // Method to find the end of the line containing pos (just past its '\n'), looking ahead at most 'limit' bytes
+    public long lineEnd(long pos, int limit) throws IOException {
+        long stop = Math.min(length, pos + limit);
+        for (long p = pos; p < stop; p++) {
+            if (get(p) == '\n')
+                return p + 1;
+        }
+        return stop;
+    }
+
+    // Method to find the next occurrence of an encoded pattern at or after 'from', or -1
+    public long indexOf(byte[] pattern, long from, boolean ignoreCase) throws IOException {
+        int m = pattern.length;
+        if (m == 0 || m > MAX_SLICE)
+            return -1;
+        byte[] folded = fold(pattern, ignoreCase);
+
+        // Scan slice by slice; consecutive slices overlap by m - 1 bytes
+        long pos = Math.max(0, from);
+        while (pos + m <= length) {
+            if (Thread.currentThread().isInterrupted())
+                return -1;
+            int len = (int) Math.min(MAX_SLICE, length - pos);
+            int i = indexOf(slice(pos, len), 0, folded, ignoreCase);
+            if (i != -1)
+                return pos + i;
+            if (pos + len >= length)
+                break;
+            pos += len - m + 1;
+        }
+        return -1;
+    }
+
+    // Method to prepare a pattern for indexOf(ByteBuffer, ...)
+    public static byte[] fold(byte[] pattern, boolean ignoreCase) {
+        byte[] folded = pattern.clone();
+        if (ignoreCase)
+            for (int i = 0; i < folded.length; i++)
+                folded[i] = fold(folded[i]);
+        return folded;
+    }
+
+    // Method to find a pattern prepared by fold() in buf at or after index 'from', or -1
+    public static int indexOf(ByteBuffer buf, int from, byte[] folded, boolean ignoreCase) {
+        int m = folded.length;
+        byte first = folded[0];
+        outer:
+        for (int i = from, last = buf.limit() - m; i <= last; i++) {
+            byte b = buf.get(i);
+            if ((ignoreCase ? fold(b) : b) != first)
+                continue;
+            for (int j = 1; j < m; j++) {
+                byte c = buf.get(i + j);
+                if ((ignoreCase ? fold(c) : c) != folded[j])
+                    continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // ASCII-only case folding, which is safe for UTF-8 and single-byte charsets
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private synchronized MappedByteBuffer region(int index) throws IOException {
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            long start = index * REGION;
+            long size = Math.min(length - start, REGION + MAX_SLICE);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            regions[index] = region;
+        }
+        return region;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mappings are released by the GC once unreachable
+        raf.close();
+    }
+}
@@ -0,0 +1,133 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.swing.JTextArea;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+
+/**
+ * Highlights search matches, but only those inside the visible part of the
+ * text area.
+ *
+ * A search can find millions of matches, and every Highlighter tag costs
+ * memory and paint time. Matches are therefore kept in sorted int arrays, and
+ * only the ones overlapping the viewport are registered with the Highlighter.
+ * The set is rebuilt whenever the viewport scrolls or resizes. All methods
+ * must be called on the EDT.
+ */
+public class MatchHighlighter implements ChangeListener {
+    private static final Color MATCH_COLOR = new Color(100, 90, 30);
+    // Upper bound on tags per screen, for pathological patterns that match every character
+    private static final int MAX_VISIBLE = 2000;
+
+    private final JTextArea textArea;
+    private final JViewport viewport;
+    private final Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(MATCH_COLOR);
+    private final ArrayList<Object> tags = new ArrayList<>();
+
+    private int[] starts = new int[256], ends = new int[256];
+    private int count;
+
+    public MatchHighlighter(JTextArea textArea) {
+        this.textArea = textArea;
+        this.viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textArea);
+        if (viewport != null)
+            viewport.addChangeListener(this);
+    }
+
+    // Method to append matches found further on; pairs of start and end offsets in document order
+    public void add(int[] matches) {
+        int n = matches.length / 2;
+        if (count + n > starts.length) {
+            int capacity = Math.max(starts.length * 2, count + n);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        for (int i = 0; i < n; i++) {
+            starts[count] = matches[2 * i];
+            ends[count++] = matches[2 * i + 1];
+        }
+        refresh();
+    }
+
+    public void clear() {
+        count = 0;
+        removeTags();
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Index of the first match starting at or after offset, or getCount() if none
+    public int indexAfter(int offset) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    // Method to stop following the viewport and remove all highlights
+    public void dispose() {
+        if (viewport != null)
+            viewport.removeChangeListener(this);
+        clear();
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        refresh();
+    }
+
+    // Method to register highlights for the matches that are currently visible
+    private void refresh() {
+        removeTags();
+        if (count == 0 || viewport == null)
+            return;
+        Rectangle visible = viewport.getViewRect();
+        int first = textArea.viewToModel2D(new Point(visible.x, visible.y));
+        int last = textArea.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+        Highlighter highlighter = textArea.getHighlighter();
+        // Matches ending before the first visible character are skipped by a binary search on the ends
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] < first)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        for (int i = lo; i < count && starts[i] <= last && tags.size() < MAX_VISIBLE; i++) {
+            try {
+                tags.add(highlighter.addHighlight(starts[i], ends[i], painter));
+            } catch (BadLocationException ex) {
+                break; // The text changed under the matches
+            }
+        }
+    }
+
+    private void removeTags() {
+        Highlighter highlighter = textArea.getHighlighter();
+        for (Object tag : tags)
+            highlighter.removeHighlight(tag);
+        tags.clear();
+    }
+}
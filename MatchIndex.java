@@ -0,0 +1,234 @@
+import java.util.Arrays;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Sorted index of where the current query matches in a document.
+ *
+ * The first scan for a query runs in the background over a snapshot. After
+ * that the index is kept up to date instead of being rebuilt. When the query
+ * is extended, the existing hits are filtered. When the document is edited,
+ * the hits after the edit are shifted and only the text around it is
+ * rescanned. Edits made while the first scan runs make its snapshot stale, so
+ * the scan starts over once typing pauses rather than on every keystroke.
+ * Finding the next or previous hit is a binary search. All methods must be
+ * called on the EDT.
+ */
+public class MatchIndex implements DocumentListener {
+    // Pause in editing after which a scan cut short by an edit starts over
+    private static final int RESTART_DELAY = 300;
+
+    private final EditorDocument doc;
+    private final Runnable onChange;
+
+    private SearchEngine engine;
+    private int[] starts = new int[64];
+    private int count;
+    // False while the first scan for the query is still running
+    private boolean complete;
+    private Builder builder;
+    private final Timer restartTimer = new Timer(RESTART_DELAY, e -> rebuild());
+
+    public MatchIndex(EditorDocument doc, Runnable onChange) {
+        this.doc = doc;
+        this.onChange = onChange;
+        restartTimer.setRepeats(false);
+        doc.addDocumentListener(this);
+    }
+
+    // Method to index a new query, filtering the current hits when the new query only narrows it
+    public void setEngine(SearchEngine next) {
+        SearchEngine previous = engine;
+        engine = next;
+        if (next == null) {
+            cancelBuild();
+            count = 0;
+            complete = true;
+            onChange.run();
+            return;
+        }
+        if (previous != null && complete && next.refines(previous)) {
+            filter();
+            onChange.run();
+            return;
+        }
+        rebuild();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getMatchLength() {
+        return engine.length();
+    }
+
+    // Index of the first hit starting at or after offset, or getCount() if none
+    public int indexAtOrAfter(int offset) {
+        return lowerBound(offset);
+    }
+
+    // Method to stop listening to the document
+    public void dispose() {
+        cancelBuild();
+        doc.removeDocumentListener(this);
+    }
+
+    private void filter() {
+        int kept = 0;
+        int m = engine.length();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (engine.matches(doc, starts[i], starts[i] + m))
+                    starts[kept++] = starts[i];
+            }
+        } catch (BadLocationException e) {
+            rebuild();
+            return;
+        }
+        count = kept;
+    }
+
+    private void rebuild() {
+        cancelBuild();
+        count = 0;
+        complete = false;
+        builder = new Builder(engine.copy(), doc.snapshot());
+        builder.execute();
+        onChange.run();
+    }
+
+    private void cancelBuild() {
+        restartTimer.stop();
+        if (builder != null) {
+            builder.cancel(true);
+            builder = null;
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        update(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        update(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    // Method to fix up the hits after 'removed' characters at offset were replaced by 'inserted' ones
+    private void update(int offset, int removed, int inserted) {
+        if (engine == null)
+            return;
+        if (!complete) {
+            // The snapshot being scanned is out of date; scan again once the edits stop
+            cancelBuild();
+            restartTimer.start();
+            return;
+        }
+        int m = engine.length();
+        // Hits overlapping or touching the edit may have changed; the ones after it just move
+        int from = lowerBound(offset - m);
+        int to = lowerBound(offset + removed + 1);
+        int shift = inserted - removed;
+        for (int i = to; i < count; i++)
+            starts[i] += shift;
+
+        // Rescan around the edit for hits starting in [offset - m, offset + inserted]
+        int[] found = new int[8];
+        int n = 0;
+        try {
+            int limit = offset + inserted + m;
+            int hit = engine.find(doc, Math.max(0, offset - m), limit);
+            while (hit != -1) {
+                if (n == found.length)
+                    found = Arrays.copyOf(found, n * 2);
+                found[n++] = hit;
+                hit = engine.find(doc, hit + 1, limit);
+            }
+        } catch (BadLocationException e) {
+            rebuild();
+            return;
+        }
+        replace(from, to, found, n);
+        onChange.run();
+    }
+
+    // Method to replace hits [from, to) with the first n values of found
+    private void replace(int from, int to, int[] found, int n) {
+        int newCount = count - (to - from) + n;
+        if (newCount > starts.length)
+            starts = Arrays.copyOf(starts, Math.max(newCount, starts.length * 2));
+        System.arraycopy(starts, to, starts, from + n, count - to);
+        System.arraycopy(found, 0, starts, from, n);
+        count = newCount;
+    }
+
+    // Index of the first hit with start >= offset
+    private int lowerBound(int offset) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Scans a snapshot for every hit of the query
+    private class Builder extends SwingWorker<int[], Void> {
+        private final SearchEngine engine;
+        private final PieceTableContent.Snapshot text;
+        private int found;
+
+        Builder(SearchEngine engine, PieceTableContent.Snapshot text) {
+            this.engine = engine;
+            this.text = text;
+        }
+
+        @Override
+        protected int[] doInBackground() {
+            int[] hits = new int[64];
+            int hit = engine.find(text, 0);
+            while (hit != -1 && !isCancelled()) {
+                if (found == hits.length)
+                    hits = Arrays.copyOf(hits, found * 2);
+                hits[found++] = hit;
+                hit = engine.find(text, hit + 1);
+            }
+            return hits;
+        }
+
+        @Override
+        protected void done() {
+            if (builder != this || isCancelled())
+                return;
+            builder = null;
+            try {
+                starts = get();
+                count = found;
+                complete = true;
+            } catch (Exception e) {
+                System.err.println("Error searching text!");
+            }
+            onChange.run();
+        }
+    }
+}
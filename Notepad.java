@@ -1,10 +1,13 @@
 import javax.swing.*;
-import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Enumeration;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
 
 public class Notepad extends JFrame {
 
@@ -13,26 +16,44 @@ public class Notepad extends JFrame {
     protected JPanel statusBar;
     protected JLabel statusLabel;
     protected JLabel positionLabel;
+    protected JLabel activityLabel;
+    // Total time the EDT has been stalled, empty until the first stall
+    protected JLabel stallLabel;
+    protected JScrollPane scrollPane;
+    private JPanel editorPanel;
+    // The large file bar of the buffer on show, if any
+    private LargeFileBar largeFileBar;
+    private TaActionListener taActionListener;
     private JToolBar toolBar;
     private JMenuBar menuBar;
     private JMenu fileMenu, editMenu, viewMenu, formatMenu, helpMenu;
-    private JMenuItem newFile, open, save, saveAs, print, close;
+    private JMenuItem newFile, open, save, saveAs, print, closeTab, close;
     private JMenuItem undo, redo, cut, copy, paste, delete, selectAll, timeDate;
-    private JMenuItem find, replace;
-    protected JCheckBoxMenuItem wordWrap, lineWrap, showDetails;
+    private JMenuItem find, replace, findInFiles;
+    protected JCheckBoxMenuItem wordWrap, lineWrap, showDetails, showHud;
+    private JMenuItem saveHud;
     protected JCheckBoxMenuItem bold, italic;
     private JMenuItem formatFont;
     private JMenu formatFontSize, formatColorFg, formatColorBg;
     private JMenuItem about, keyboardShortcuts;
 
-    protected UndoManager undoManager = new UndoManager();
+    protected DocumentCounter documentCounter = new DocumentCounter();
+    protected StatusScheduler statusScheduler = new StatusScheduler(this);
     protected ButtonGroup fontGroup = new ButtonGroup();
     protected ButtonGroup fontSizeGroup = new ButtonGroup();
     protected ButtonGroup colorFgGroup = new ButtonGroup();
     protected ButtonGroup colorBgGroup = new ButtonGroup();
 
     protected int charCount, wordCount, lineNum = 1;
-    protected String[] fonts = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+    // The open documents, and the one shown in the text area
+    protected BufferTabs tabs;
+    protected Buffer buffer;
+    // The performance overlay while it is on, told when the text area has painted
+    protected PerformanceHud hud;
+    // The Find and Replace dialog while it is open; Find and Replace both bring back this one
+    protected FindReplaceDialog findReplaceDialog;
+    // Installed font families, listed in the background so they do not hold up startup
+    protected FontCatalog fonts = new FontCatalog();
     protected int[] fontSizes = { 12, 14, 16, 18, 20, 24, 28, 36, 48, 56, 64, 72 };
     protected String[] colors = { "Black", "White", "Red", "Blue", "Green" };
     protected Color[] awtColors = { Color.BLACK, Color.WHITE, Color.RED, Color.BLUE, Color.GREEN };
@@ -45,6 +66,7 @@ public class Notepad extends JFrame {
     private static final Color STATUS_BAR_COLOR = new Color(53, 53, 53);
 
     public Notepad() {
+        fonts.execute();
         setTitle("Modern Notepad");
         setSize(1000, 700);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -69,7 +91,19 @@ public class Notepad extends JFrame {
 
     private void initializeComponents() {
         // Create text area first
-        textarea = new JTextArea();
+        textarea = new JTextArea() {
+            @Override
+            public void updateUI() {
+                setUI(new SyntaxTextAreaUI()); // Keep the highlighting views whatever the look and feel
+            }
+
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (hud != null)
+                    hud.textPainted();
+            }
+        };
         textarea.setLineWrap(true);
         textarea.setWrapStyleWord(true);
         textarea.setForeground(FOREGROUND_COLOR);
@@ -77,7 +111,8 @@ public class Notepad extends JFrame {
         textarea.setCaretColor(FOREGROUND_COLOR);
         textarea.setSelectionColor(SELECTION_COLOR);
         textarea.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-        textarea.getDocument().addUndoableEditListener(undoManager);
+        documentCounter.install(textarea.getDocument());
+        tabs = new BufferTabs(this);
 
         // Create menu bar
         menuBar = new JMenuBar();
@@ -140,8 +175,16 @@ public class Notepad extends JFrame {
         statusLabel.setForeground(FOREGROUND_COLOR);
         statusBar.add(statusLabel, BorderLayout.WEST);
 
+        activityLabel = new JLabel("");
+        activityLabel.setForeground(FOREGROUND_COLOR);
+        activityLabel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
+        statusBar.add(activityLabel, BorderLayout.CENTER);
+
         JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         rightPanel.setBackground(STATUS_BAR_COLOR);
+        stallLabel = new JLabel("");
+        stallLabel.setForeground(FOREGROUND_COLOR);
+        rightPanel.add(stallLabel);
         positionLabel = new JLabel("Line: 1, Column: 1");
         positionLabel.setForeground(FOREGROUND_COLOR);
         rightPanel.add(positionLabel);
@@ -153,27 +196,108 @@ public class Notepad extends JFrame {
         setJMenuBar(menuBar);
         add(toolBar, BorderLayout.NORTH);
 
-        JScrollPane scrollPane = new JScrollPane(textarea);
+        scrollPane = new JScrollPane(textarea);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
-        add(scrollPane, BorderLayout.CENTER);
+        editorPanel = new JPanel(new BorderLayout());
+        editorPanel.add(tabs, BorderLayout.NORTH);
+        editorPanel.add(scrollPane, BorderLayout.CENTER);
+        add(editorPanel, BorderLayout.CENTER);
         add(statusBar, BorderLayout.SOUTH);
     }
 
     private void setupEventListeners() {
         // Add text area listeners
-        TaActionListener tal = new TaActionListener(this);
-        textarea.addKeyListener(tal);
-        textarea.addCaretListener(tal);
+        taActionListener = new TaActionListener(this);
+        textarea.addKeyListener(taActionListener);
+        textarea.addCaretListener(taActionListener);
+        textarea.getDocument().addDocumentListener(taActionListener);
 
-        // Add window listener for auto-save
+        // Start with one empty document
+        tabs.add(new Buffer(this));
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                // Add auto-save logic here
+                // Journals with unsaved edits are kept for recovery on the next start
+                for (Buffer open : tabs.getBuffers())
+                    open.journal.close();
             }
         });
     }
 
+    // Method to replace the text area's document and move the document listeners over
+    private void setDocument(Document doc) {
+        Document old = textarea.getDocument();
+        old.removeDocumentListener(taActionListener);
+        textarea.setDocument(doc);
+        doc.addDocumentListener(taActionListener);
+        documentCounter.install(doc);
+        statusScheduler.requestUpdate();
+    }
+
+    // Method to show a buffer in the text area, restoring its caret and scroll position
+    protected void showBuffer(Buffer next) {
+        if (buffer != null && buffer != next && buffer.doc != null && buffer.doc == textarea.getDocument()) {
+            // Remember where the outgoing buffer was left
+            buffer.dot = textarea.getCaret().getDot();
+            buffer.mark = textarea.getCaret().getMark();
+            buffer.viewY = scrollPane.getViewport().getViewPosition().y;
+        }
+        buffer = next;
+        buffer.lastUsed = System.nanoTime();
+        tabs.select(buffer);
+        if (buffer.isEvicted()) {
+            buffer.reload(); // Shows the buffer again once its document is back
+            return;
+        }
+        if (textarea.getDocument() != buffer.doc)
+            setDocument(buffer.doc);
+
+        if (largeFileBar != buffer.largeFileBar) {
+            if (largeFileBar != null) {
+                scrollPane.removeMouseWheelListener(largeFileBar);
+                editorPanel.remove(largeFileBar);
+            }
+            largeFileBar = buffer.largeFileBar;
+            if (largeFileBar != null) {
+                scrollPane.addMouseWheelListener(largeFileBar);
+                editorPanel.add(largeFileBar, BorderLayout.SOUTH);
+            }
+            editorPanel.revalidate();
+        }
+
+        boolean loading = buffer.isLoading();
+        textarea.setEditable(!loading && !(buffer.doc instanceof LargeFileDocument));
+        // While loading, keep the view at the top as text is appended below it
+        ((DefaultCaret) textarea.getCaret()).setUpdatePolicy(
+                loading ? DefaultCaret.NEVER_UPDATE : DefaultCaret.UPDATE_WHEN_ON_EDT);
+        if (!loading) {
+            int length = buffer.doc.getLength();
+            textarea.setCaretPosition(Math.min(buffer.mark, length));
+            textarea.moveCaretPosition(Math.min(buffer.dot, length));
+            int viewY = buffer.viewY;
+            if (viewY >= 0) {
+                // After layout, so the view is tall enough to scroll to
+                SwingUtilities.invokeLater(() -> scrollPane.getViewport().setViewPosition(new Point(0, viewY)));
+            }
+        }
+        updateTitle();
+        tabs.enforceBudget();
+    }
+
+    // Method to open a tab for a file, reusing the current one if it is empty and untouched
+    protected Buffer openBuffer() {
+        if (!buffer.isUnused())
+            tabs.add(new Buffer(this));
+        return buffer;
+    }
+
+    // Method to show the active buffer's name in the title bar and its tab, and highlight it by its file type
+    protected void updateTitle() {
+        setTitle("Notepad - " + buffer.getTitle());
+        tabs.refresh(buffer);
+        SyntaxHighlighter.install(textarea, Lexers.forFile(buffer.fileName));
+    }
+
     private void applyModernStyling() {
         // Apply modern styling to all components
         UIManager.put("Menu.background", TOOLBAR_COLOR);
@@ -247,6 +371,12 @@ public class Notepad extends JFrame {
 
         fileMenu.addSeparator(); // Add a separator line
 
+        closeTab = new JMenuItem("Close Tab");
+        closeTab.addActionListener(fal);
+        closeTab.setActionCommand("Close Tab");
+        closeTab.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F4, InputEvent.CTRL_DOWN_MASK));
+        fileMenu.add(closeTab);
+
         close = new JMenuItem("Close");
         close.addActionListener(fal);
         close.setActionCommand("Close");
@@ -312,6 +442,12 @@ public class Notepad extends JFrame {
         replace.setAccelerator(KeyStroke.getKeyStroke('H', InputEvent.CTRL_DOWN_MASK));
         editMenu.add(replace);
 
+        findInFiles = new JMenuItem("Find in Files");
+        findInFiles.addActionListener(eal);
+        findInFiles.setActionCommand("Find in Files");
+        findInFiles.setAccelerator(KeyStroke.getKeyStroke('F', InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        editMenu.add(findInFiles);
+
         editMenu.addSeparator();
 
         selectAll = new JMenuItem("Select All");
@@ -348,6 +484,17 @@ public class Notepad extends JFrame {
         showDetails.setActionCommand("Status Bar");
         showDetails.setAccelerator(KeyStroke.getKeyStroke('D', InputEvent.CTRL_DOWN_MASK));
         viewMenu.add(showDetails);
+
+        showHud = new JCheckBoxMenuItem("Performance HUD");
+        showHud.addActionListener(val);
+        showHud.setActionCommand("Performance HUD");
+        showHud.setAccelerator(KeyStroke.getKeyStroke('P', InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        viewMenu.add(showHud);
+
+        saveHud = new JMenuItem("Save Performance Histograms");
+        saveHud.addActionListener(val);
+        saveHud.setActionCommand("Save Performance Histograms");
+        viewMenu.add(saveHud);
     }
 
     // Method to add items to the Format menu
@@ -358,17 +505,29 @@ public class Notepad extends JFrame {
         JMenu fontMenu = new JMenu("Font");
         formatMenu.add(fontMenu);
 
-        // Add font family submenu
+        // Add font family submenu, filled in the first time it opens
         JMenu fontFamilyMenu = new JMenu("Font Family");
         fontMenu.add(fontFamilyMenu);
+        fontFamilyMenu.addMenuListener(new MenuListener() {
+            @Override
+            public void menuSelected(MenuEvent e) {
+                fontFamilyMenu.removeMenuListener(this);
+                if (!fonts.isDone()) {
+                    JMenuItem loading = new JMenuItem("Loading fonts...");
+                    loading.setEnabled(false);
+                    fontFamilyMenu.add(loading);
+                }
+                fonts.whenLoaded(() -> addFontFamilies(fontFamilyMenu, fal));
+            }
 
-        // Add font families
-        for (String font : fonts) {
-            JMenuItem fontItem = new JMenuItem(font);
-            fontItem.addActionListener(fal);
-            fontItem.setActionCommand("Font");
-            fontFamilyMenu.add(fontItem);
-        }
+            @Override
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            @Override
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
 
         formatMenu.addSeparator();
 
@@ -455,9 +614,28 @@ public class Notepad extends JFrame {
         helpMenu.add(keyboardShortcuts);
     }
 
+    // Method to fill the font family submenu, replacing its placeholder
+    private void addFontFamilies(JMenu fontFamilyMenu, FormatActionListener fal) {
+        fontFamilyMenu.removeAll();
+        for (String font : fonts.getFamilies()) {
+            JMenuItem fontItem = new JMenuItem(font);
+            fontItem.addActionListener(fal);
+            fontItem.setActionCommand("Font");
+            fontFamilyMenu.add(fontItem);
+        }
+        if (fontFamilyMenu.isPopupMenuVisible()) {
+            // Resize the open popup to its new items
+            fontFamilyMenu.setPopupMenuVisible(false);
+            fontFamilyMenu.setPopupMenuVisible(true);
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            new Notepad().setVisible(true);
+            Notepad notepad = new Notepad();
+            notepad.setVisible(true);
+            EdtWatchdog.install(notepad);
+            EditJournal.offerRecovery(notepad);
         });
     }
 }
@@ -0,0 +1,289 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.swing.JComponent;
+import javax.swing.JLayeredPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Overlay in the corner of the text area showing how fast the editor is
+ * responding: keystroke-to-paint latency, the rate of document events, heap
+ * use and GC pauses.
+ *
+ * A keystroke is timed from when the text area's key listeners see it until
+ * the text area has next painted, provided it changed the text or moved the
+ * caret; keys typed before the paint are timed from the first. Latencies and
+ * pauses go into LatencyHistograms, which take the same memory however long
+ * the session, both for the whole session and for the last few seconds.
+ * Nothing is recorded while the overlay is hidden. The session histograms
+ * can be written to the diagnostics directory to compare builds.
+ */
+public class PerformanceHud extends JComponent implements KeyListener, CaretListener, DocumentListener {
+    private static final int REFRESH_MILLIS = 500;
+    // Length of the window the "last seconds" figures cover
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int LINES = 5;
+    private static final int MARGIN = 8;
+
+    private final Notepad notepad;
+    private final LatencyHistogram keyLatency = new LatencyHistogram();
+    private final LatencyHistogram gcPauses = new LatencyHistogram();
+    // Keystroke latencies of the window being recorded, and of the last complete one
+    private LatencyHistogram windowLatency = new LatencyHistogram();
+    private LatencyHistogram lastWindowLatency = new LatencyHistogram();
+    private long windowStart = System.nanoTime();
+
+    // When the key held now was pressed, and the earliest keystroke that changed something not painted yet; EDT only
+    private long keyStart;
+    private long pendingKey;
+
+    private long documentEvents, lastDocumentEvents;
+    private long lastRefresh = System.nanoTime();
+    private double documentEventRate;
+    private final String[] lines = new String[LINES];
+
+    private final Timer timer = new Timer(REFRESH_MILLIS, e -> refresh());
+    private final PropertyChangeListener documentSwap = e -> {
+        ((Document) e.getOldValue()).removeDocumentListener(this);
+        ((Document) e.getNewValue()).addDocumentListener(this);
+    };
+    private final ComponentListener placer = new ComponentAdapter() {
+        @Override
+        public void componentResized(ComponentEvent e) {
+            place();
+        }
+
+        @Override
+        public void componentMoved(ComponentEvent e) {
+            place();
+        }
+    };
+    private final NotificationListener gcListener = this::gcDone;
+
+    public PerformanceHud(Notepad notepad) {
+        this.notepad = notepad;
+        setOpaque(true); // So that refreshing it never repaints the text beneath
+        setBackground(new Color(30, 30, 30));
+        setForeground(new Color(169, 183, 198));
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        refresh();
+    }
+
+    // Method to show the overlay and start recording
+    public void showHud() {
+        notepad.textarea.addKeyListener(this);
+        notepad.textarea.addCaretListener(this);
+        notepad.textarea.getDocument().addDocumentListener(this);
+        notepad.textarea.addPropertyChangeListener("document", documentSwap);
+        notepad.scrollPane.addComponentListener(placer);
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+        }
+        notepad.getLayeredPane().add(this, JLayeredPane.PALETTE_LAYER);
+        place();
+        timer.start();
+    }
+
+    // Method to hide the overlay and stop recording, keeping what was recorded
+    public void hideHud() {
+        timer.stop();
+        notepad.textarea.removeKeyListener(this);
+        notepad.textarea.removeCaretListener(this);
+        notepad.textarea.getDocument().removeDocumentListener(this);
+        notepad.textarea.removePropertyChangeListener("document", documentSwap);
+        notepad.scrollPane.removeComponentListener(placer);
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                if (gc instanceof NotificationEmitter)
+                    ((NotificationEmitter) gc).removeNotificationListener(gcListener);
+            } catch (Exception e) {
+                // Was never added
+            }
+        }
+        notepad.getLayeredPane().remove(this);
+        notepad.getLayeredPane().repaint(getBounds());
+        keyStart = pendingKey = 0;
+    }
+
+    // Method to note that the text area has painted, ending the timing of the keystrokes it shows
+    public void textPainted() {
+        if (pendingKey == 0)
+            return;
+        long latency = System.nanoTime() - pendingKey;
+        keyLatency.record(latency);
+        windowLatency.record(latency);
+        pendingKey = 0;
+    }
+
+    // Method to write the session histograms to a new file in the diagnostics directory, returning it
+    public Path dump() throws IOException {
+        Files.createDirectories(EdtWatchdog.DIRECTORY);
+        Path file = EdtWatchdog.DIRECTORY.resolve(
+                "hud-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+            out.println("# Notepad performance histograms, " + new Date() + ", Java "
+                    + System.getProperty("java.version") + " on " + System.getProperty("os.name"));
+            out.println("# Keystroke to paint: " + keyLatency.summary());
+            keyLatency.dump(out);
+            out.println("# GC pauses: " + gcPauses.summary());
+            gcPauses.dump(out);
+        }
+        return file;
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        if (keyStart == 0)
+            keyStart = System.nanoTime(); // Typed without a press of its own, as from an input method
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        keyStart = System.nanoTime();
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        keyStart = 0;
+    }
+
+    @Override
+    public void caretUpdate(CaretEvent e) {
+        keyChanged();
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        documentEvents++;
+        keyChanged();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        documentEvents++;
+        keyChanged();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        documentEvents++;
+    }
+
+    // Method to start timing the keystroke being dispatched, if this change came from it
+    private void keyChanged() {
+        if (keyStart != 0 && pendingKey == 0 && EventQueue.getCurrentEvent() instanceof KeyEvent)
+            pendingKey = keyStart;
+    }
+
+    // Method run on a JMX thread after each collection, recording the pauses
+    private void gcDone(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+            return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                (CompositeData) notification.getUserData());
+        // Concurrent cycles run alongside the application and are not pauses
+        String name = info.getGcName();
+        if (name.contains("Concurrent") || name.endsWith("Cycles"))
+            return;
+        gcPauses.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS) {
+            LatencyHistogram finished = windowLatency;
+            windowLatency = lastWindowLatency;
+            windowLatency.reset();
+            lastWindowLatency = finished;
+            windowStart = now;
+        }
+        documentEventRate = (documentEvents - lastDocumentEvents) * 1e9 / Math.max(1, now - lastRefresh);
+        lastDocumentEvents = documentEvents;
+        lastRefresh = now;
+
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        lines[0] = String.format("Key to paint  %s (last 5 s)", percentiles(lastWindowLatency));
+        lines[1] = String.format("              %s (session, %d keys)", percentiles(keyLatency),
+                keyLatency.getCount());
+        lines[2] = String.format("Doc events    %.0f/s", documentEventRate);
+        lines[3] = String.format("Heap          %d of %d MB", used >> 20, runtime.maxMemory() >> 20);
+        lines[4] = String.format("GC pauses     %d, p99 %.1f max %.1f ms", gcPauses.getCount(),
+                gcPauses.getPercentile(0.99) / 1e6, gcPauses.getMax() / 1e6);
+        if (getParent() != null && getPreferredSize().width > getWidth())
+            place(); // Grown past the room left for it
+        repaint();
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0)
+            return "p50    -  p99    -  max    - ms";
+        return String.format("p50 %4.1f  p99 %4.1f  max %4.1f ms", histogram.getPercentile(0.5) / 1e6,
+                histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    // Method to put the overlay in the top right corner of the visible text
+    private void place() {
+        Dimension size = getPreferredSize();
+        Rectangle view = SwingUtilities.convertRectangle(notepad.scrollPane.getViewport().getParent(),
+                notepad.scrollPane.getViewport().getBounds(), notepad.getLayeredPane());
+        setBounds(view.x + view.width - size.width - MARGIN, view.y + MARGIN, size.width, size.height);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics fm = getFontMetrics(getFont());
+        int width = 0;
+        for (String line : lines)
+            width = Math.max(width, fm.stringWidth(line));
+        // Room for the longest figures, so the overlay does not change size as they do
+        width = Math.max(width, fm.stringWidth("x".repeat(72)));
+        return new Dimension(width + 2 * MARGIN, fm.getHeight() * LINES + 2 * MARGIN);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        int y = MARGIN + fm.getAscent();
+        for (String line : lines) {
+            g.drawString(line, MARGIN, y);
+            y += fm.getHeight();
+        }
+    }
+}
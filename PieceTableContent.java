@@ -0,0 +1,468 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Piece-table storage for the text area's document.
+ *
+ * The text is a list of pieces, each pointing into a buffer that is never
+ * modified once written. Loaded text and typed text are appended to buffers,
+ * and an edit only splits, adds or drops pieces. No text is ever moved,
+ * however far apart two edits are. Undo records keep the removed pieces
+ * rather than copies of the text, so undoing a large delete costs nothing
+ * extra. Plug it in with new PlainDocument(new PieceTableContent()).
+ *
+ * Buffers are stored one byte per character (Latin-1) while every character
+ * fits, which halves the heap for ASCII files. Text with wider characters goes
+ * to UTF-16 buffers, and a shared Latin-1 buffer is replaced by a UTF-16 one
+ * as soon as such a character is typed. Existing pieces are never rewritten.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    // Size of the shared buffers that typed text is appended to
+    private static final int BLOCK = 64 * 1024;
+
+    private final ArrayList<Piece> pieces = new ArrayList<>();
+    private final PositionTracker positions = new PositionTracker();
+    private int length;
+
+    // Buffer that small inserts are appended to, a byte[] (Latin-1) or char[] (UTF-16)
+    private Object block;
+    private int blockUsed;
+
+    // Scratch space for partial reads of Latin-1 pieces, one per reading thread
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[8 * 1024]);
+
+    // Piece index and start offset of the last lookup, since edits tend to be close together
+    private int cacheIndex, cacheStart;
+
+    public PieceTableContent() {
+        // Like GapContent, start with the implied newline at the end of the document
+        pieces.add(new Piece(new byte[] { '\n' }, 0, 1));
+        length = 1;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length)
+            throw new BadLocationException("Invalid position", offset);
+        return positions.createPosition(offset);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where > length || where < 0)
+            throw new BadLocationException("Invalid insert", where);
+        int n = str.length();
+        if (n == 0)
+            return null;
+        insertPiece(where, store(str));
+        positions.insertUpdate(where, n);
+        return new InsertEdit(where, n);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || where + nitems >= length)
+            throw new BadLocationException("Invalid remove", length + 1);
+        if (nitems == 0)
+            return null;
+        PositionTracker.Captured captured = positions.capture(where, nitems);
+        Piece[] removed = cut(where, nitems);
+        positions.removeUpdate(where, nitems);
+        return new RemoveEdit(where, nitems, removed, captured);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment s = new Segment();
+        getChars(where, len, s);
+        return new String(s.array, s.offset, s.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment chars) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length)
+            throw new BadLocationException("Invalid location", where + len);
+        int index = find(where);
+        Piece piece = pieces.get(index);
+        int inPiece = where - cacheStart;
+        int available = piece.length - inPiece;
+        if (piece.buffer instanceof char[] && (len <= available || chars.isPartialReturn())) {
+            // Point straight into the buffer, no copy needed
+            chars.array = (char[]) piece.buffer;
+            chars.offset = piece.start + inPiece;
+            chars.count = Math.min(len, available);
+            return;
+        }
+        if (chars.isPartialReturn()) {
+            // Widen part of a Latin-1 piece; valid until this thread's next partial read
+            char[] scratch = SCRATCH.get();
+            int n = Math.min(Math.min(len, available), scratch.length);
+            piece.copyTo(inPiece, scratch, 0, n);
+            chars.array = scratch;
+            chars.offset = 0;
+            chars.count = n;
+            return;
+        }
+        char[] copy = new char[len];
+        int copied = 0;
+        while (copied < len) {
+            int n = Math.min(piece.length - inPiece, len - copied);
+            piece.copyTo(inPiece, copy, copied, n);
+            copied += n;
+            inPiece = 0;
+            if (copied < len)
+                piece = pieces.get(++index);
+        }
+        chars.array = copy;
+        chars.offset = 0;
+        chars.count = len;
+    }
+
+    // Number of pieces the text is currently split into
+    public int getPieceCount() {
+        return pieces.size();
+    }
+
+    // Method to take an immutable view of [where, where + len) that any thread can read
+    public Snapshot snapshot(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length)
+            throw new BadLocationException("Invalid location", where + len);
+        ArrayList<Piece> run = new ArrayList<>();
+        if (len > 0) {
+            int index = find(where);
+            int inPiece = where - cacheStart;
+            int remaining = len;
+            while (remaining > 0) {
+                Piece piece = pieces.get(index++);
+                int n = Math.min(piece.length - inPiece, remaining);
+                run.add(n == piece.length ? piece : new Piece(piece.buffer, piece.start + inPiece, n));
+                remaining -= n;
+                inPiece = 0;
+            }
+        }
+        return new Snapshot(run.toArray(new Piece[0]), len);
+    }
+
+    // Method to copy text into an append-only buffer and return the piece covering it
+    private Piece store(String str) {
+        int n = str.length();
+        boolean latin1 = isLatin1(str);
+        if (n >= BLOCK / 2) {
+            // Large inserts such as loaded chunks get a buffer of their own
+            return new Piece(latin1 ? str.getBytes(StandardCharsets.ISO_8859_1) : str.toCharArray(), 0, n);
+        }
+        boolean fits = block != null && blockUsed + n <= BLOCK;
+        if (!fits || (!latin1 && block instanceof byte[])) {
+            // Start a new buffer, upgrading to UTF-16 if this text needs it
+            block = latin1 ? new byte[BLOCK] : new char[BLOCK];
+            blockUsed = 0;
+        }
+        if (block instanceof char[]) {
+            str.getChars(0, n, (char[]) block, blockUsed);
+        } else {
+            byte[] bytes = (byte[]) block;
+            for (int i = 0; i < n; i++)
+                bytes[blockUsed + i] = (byte) str.charAt(i);
+        }
+        Piece piece = new Piece(block, blockUsed, n);
+        blockUsed += n;
+        return piece;
+    }
+
+    private static boolean isLatin1(String str) {
+        for (int i = 0, n = str.length(); i < n; i++) {
+            if (str.charAt(i) > 0xFF)
+                return false;
+        }
+        return true;
+    }
+
+    // Method to insert one piece at offset, merging it with the piece before when they are contiguous
+    private void insertPiece(int where, Piece piece) {
+        int index = split(where);
+        if (index > 0) {
+            Piece before = pieces.get(index - 1);
+            if (before.buffer == piece.buffer && before.start + before.length == piece.start) {
+                pieces.set(index - 1, new Piece(before.buffer, before.start, before.length + piece.length));
+                length += piece.length;
+                setCache(index - 1, where - before.length);
+                return;
+            }
+        }
+        pieces.add(index, piece);
+        length += piece.length;
+        setCache(index, where);
+    }
+
+    // Method to insert a run of pieces at offset (used by undo and redo)
+    private void insertPieces(int where, Piece[] run) {
+        int index = split(where);
+        pieces.addAll(index, Arrays.asList(run));
+        for (Piece piece : run)
+            length += piece.length;
+        setCache(index, where);
+    }
+
+    // Method to remove [where, where + n) and return the pieces that covered it
+    private Piece[] cut(int where, int n) {
+        int from = split(where);
+        int to = split(where + n);
+        List<Piece> range = pieces.subList(from, to);
+        Piece[] removed = range.toArray(new Piece[0]);
+        range.clear();
+        length -= n;
+        setCache(from, where);
+        return removed;
+    }
+
+    // Method to make offset fall on a piece boundary and return the index of the piece starting there
+    private int split(int offset) {
+        if (offset == length)
+            return pieces.size();
+        int index = find(offset);
+        int inPiece = offset - cacheStart;
+        if (inPiece == 0)
+            return index;
+        Piece piece = pieces.get(index);
+        pieces.set(index, new Piece(piece.buffer, piece.start, inPiece));
+        pieces.add(index + 1, new Piece(piece.buffer, piece.start + inPiece, piece.length - inPiece));
+        return index + 1;
+    }
+
+    // Method to find the index of the piece containing offset, walking from the last lookup
+    private int find(int offset) {
+        int index = cacheIndex, start = cacheStart;
+        if (index >= pieces.size() || offset < start) {
+            index = 0;
+            start = 0;
+        }
+        while (offset >= start + pieces.get(index).length && index < pieces.size() - 1) {
+            start += pieces.get(index).length;
+            index++;
+        }
+        cacheIndex = index;
+        cacheStart = start;
+        return index;
+    }
+
+    private void setCache(int index, int start) {
+        if (index < pieces.size()) {
+            cacheIndex = index;
+            cacheStart = start;
+        } else {
+            cacheIndex = 0;
+            cacheStart = 0;
+        }
+    }
+
+    // A run of text inside a buffer; pieces are never changed once created
+    private static final class Piece {
+        // char[] for UTF-16 text or byte[] for Latin-1 text
+        final Object buffer;
+        final int start;
+        final int length;
+
+        Piece(Object buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+
+        char charAt(int i) {
+            if (buffer instanceof char[])
+                return ((char[]) buffer)[start + i];
+            return (char) (((byte[]) buffer)[start + i] & 0xFF);
+        }
+
+        void copyTo(int from, char[] dst, int dstPos, int n) {
+            if (buffer instanceof char[]) {
+                System.arraycopy((char[]) buffer, start + from, dst, dstPos, n);
+            } else {
+                byte[] bytes = (byte[]) buffer;
+                for (int i = 0, src = start + from; i < n; i++)
+                    dst[dstPos + i] = (char) (bytes[src + i] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * The text of a document at one point in time.
+     *
+     * Pieces and the buffer ranges they cover are never modified, so a snapshot
+     * only copies the piece list and stays valid while the document is edited.
+     * It can be handed to a worker thread, but one snapshot must not be read by
+     * several threads at once.
+     */
+    public static final class Snapshot implements CharSequence {
+        private final Piece[] pieces;
+        private final int[] starts;
+        private final int length;
+        private int last;
+        private char[] scratch;
+
+        private Snapshot(Piece[] pieces, int length) {
+            this.pieces = pieces;
+            this.length = length;
+            starts = new int[pieces.length];
+            for (int i = 1; i < pieces.length; i++)
+                starts[i] = starts[i - 1] + pieces[i - 1].length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index " + index + " of " + length);
+            int i = locate(index);
+            return pieces[i].charAt(index - starts[i]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException("range " + start + "-" + end + " of " + length);
+            char[] copy = new char[end - start];
+            int copied = 0;
+            while (copied < copy.length) {
+                int i = locate(start + copied);
+                int inPiece = start + copied - starts[i];
+                int n = Math.min(pieces[i].length - inPiece, copy.length - copied);
+                pieces[i].copyTo(inPiece, copy, copied, n);
+                copied += n;
+            }
+            return new String(copy);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+
+        // Method to point chars at the text from where, stopping at len characters or the end of a piece
+        public void getChars(int where, int len, Segment chars) {
+            if (where < 0 || len < 0 || where + len > length)
+                throw new IndexOutOfBoundsException("range " + where + "+" + len + " of " + length);
+            if (len == 0) {
+                chars.array = new char[0];
+                chars.offset = 0;
+                chars.count = 0;
+                return;
+            }
+            int i = locate(where);
+            Piece piece = pieces[i];
+            int inPiece = where - starts[i];
+            int n = Math.min(len, piece.length - inPiece);
+            if (piece.buffer instanceof char[]) {
+                chars.array = (char[]) piece.buffer;
+                chars.offset = piece.start + inPiece;
+            } else {
+                // Widen Latin-1 text; valid until the next call
+                if (scratch == null)
+                    scratch = new char[8 * 1024];
+                n = Math.min(n, scratch.length);
+                piece.copyTo(inPiece, scratch, 0, n);
+                chars.array = scratch;
+                chars.offset = 0;
+            }
+            chars.count = n;
+        }
+
+        // Index of the piece containing offset, checking the last one first since reads are mostly sequential
+        private int locate(int offset) {
+            if (offset >= starts[last] && offset < starts[last] + pieces[last].length)
+                return last;
+            if (last + 1 < pieces.length && offset >= starts[last + 1]
+                    && offset < starts[last + 1] + pieces[last + 1].length)
+                return ++last;
+            int lo = 0, hi = pieces.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= offset)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            last = lo;
+            return lo;
+        }
+    }
+
+    private final class InsertEdit extends AbstractUndoableEdit {
+        private final int where;
+        private final int n;
+        private Piece[] inserted;
+        private PositionTracker.Captured captured;
+
+        InsertEdit(int where, int n) {
+            this.where = where;
+            this.n = n;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            captured = positions.capture(where, n);
+            inserted = cut(where, n);
+            positions.removeUpdate(where, n);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insertPieces(where, inserted);
+            positions.insertUpdate(where, n);
+            positions.restore(captured, where, n);
+            inserted = null;
+            captured = null;
+        }
+    }
+
+    private final class RemoveEdit extends AbstractUndoableEdit {
+        private final int where;
+        private final int n;
+        private final Piece[] removed;
+        private PositionTracker.Captured captured;
+
+        RemoveEdit(int where, int n, Piece[] removed, PositionTracker.Captured captured) {
+            this.where = where;
+            this.n = n;
+            this.removed = removed;
+            this.captured = captured;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insertPieces(where, removed);
+            positions.insertUpdate(where, n);
+            positions.restore(captured, where, n);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            captured = positions.capture(where, n);
+            cut(where, n);
+            positions.removeUpdate(where, n);
+        }
+    }
+}
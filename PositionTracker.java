@@ -0,0 +1,197 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import javax.swing.text.Position;
+
+/**
+ * Keeps the Positions handed out by a document content up to date across edits.
+ *
+ * Marks are kept sorted in an array. Like GapContent, it stores them relative
+ * to a gap: a mark before the gap stores its offset, and a mark after the gap
+ * stores its offset plus the gap length. An edit moves the gap to the edit
+ * location and only touches the marks between the old and new gap location.
+ * Typing in one place therefore costs nothing per mark. The gap is virtual and
+ * starts out huge, so it never has to be resized. Marks are weakly
+ * referenced, and marks whose Position was collected are purged lazily.
+ * Positions created at the same offset share one mark, unless an undoable
+ * edit has captured it: undo and redo move captured marks back to where they
+ * were, which must not drag along positions created since.
+ */
+class PositionTracker {
+    private static final long INITIAL_GAP = 1L << 40;
+
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+    private Mark[] marks = new Mark[64];
+    private int count;
+    private long gapStart;
+    private long gapLength = INITIAL_GAP;
+
+    // Method to create a position that follows the text at offset
+    synchronized Position createPosition(int offset) {
+        purge();
+        long raw = offset < gapStart ? offset : offset + gapLength;
+        int index = upperBound(raw);
+        if (index > 0 && marks[index - 1].raw == raw && !marks[index - 1].captured) {
+            // Share the position already at this offset, as GapContent does
+            StickyPosition existing = marks[index - 1].get();
+            if (existing != null)
+                return existing;
+        }
+        StickyPosition position = new StickyPosition();
+        Mark mark = new Mark(position, raw);
+        position.mark = mark;
+        if (count == marks.length)
+            marks = Arrays.copyOf(marks, count * 2);
+        System.arraycopy(marks, index, marks, index + 1, count - index);
+        marks[index] = mark;
+        count++;
+        return position;
+    }
+
+    // Method to update the marks after n characters were inserted at offset
+    synchronized void insertUpdate(int offset, int n) {
+        moveGap(offset);
+        if (offset == 0) {
+            // Positions at the very start of the document stay there
+            for (int i = 0; i < count && marks[i].raw == gapLength; i++)
+                marks[i].raw = 0;
+        }
+        gapStart += n;
+        gapLength -= n;
+    }
+
+    // Method to capture the marks inside [offset, offset + n] before that range is removed
+    synchronized Captured capture(int offset, int n) {
+        int from = lowerBound(toRaw(offset));
+        int to = upperBound(toRaw(offset + n));
+        Mark[] captured = Arrays.copyOfRange(marks, from, to);
+        int[] relative = new int[captured.length];
+        for (int i = 0; i < captured.length; i++) {
+            captured[i].captured = true;
+            relative[i] = offset(captured[i]) - offset;
+        }
+        return new Captured(captured, relative);
+    }
+
+    // Method to update the marks after n characters were removed at offset
+    synchronized void removeUpdate(int offset, int n) {
+        moveGap(offset);
+        long gapEnd = gapStart + gapLength;
+        // Marks inside the removed range collapse onto its start
+        for (int i = lowerBound(gapEnd); i < count && marks[i].raw < gapEnd + n; i++)
+            marks[i].raw = gapEnd + n;
+        gapLength += n;
+    }
+
+    // Method to put captured marks back where they were after their range is reinserted at offset
+    synchronized void restore(Captured captured, int offset, int n) {
+        moveGap(offset);
+        for (int i = 0; i < captured.marks.length; i++)
+            captured.marks[i].raw = offset + captured.relative[i] + gapLength;
+        int from = lowerBound(offset + gapLength);
+        int to = upperBound(offset + n + gapLength);
+        Arrays.sort(marks, from, to, (a, b) -> Long.compare(a.raw, b.raw));
+    }
+
+    private int offset(Mark mark) {
+        return (int) (mark.raw < gapStart ? mark.raw : mark.raw - gapLength);
+    }
+
+    private long toRaw(int offset) {
+        return offset < gapStart ? offset : offset + gapLength;
+    }
+
+    private void moveGap(int newStart) {
+        if (newStart < gapStart) {
+            // Marks in [newStart, gapStart) move behind the gap
+            for (int i = lowerBound(newStart); i < count && marks[i].raw < gapStart; i++)
+                marks[i].raw += gapLength;
+        } else if (newStart > gapStart) {
+            // Marks in [gapStart, newStart) move in front of the gap
+            long gapEnd = gapStart + gapLength;
+            for (int i = lowerBound(gapEnd); i < count && marks[i].raw < newStart + gapLength; i++)
+                marks[i].raw -= gapLength;
+        }
+        gapStart = newStart;
+    }
+
+    // Index of the first mark with raw >= value
+    private int lowerBound(long value) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (marks[mid].raw < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Index of the first mark with raw > value
+    private int upperBound(long value) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (marks[mid].raw <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Method to drop marks whose positions are no longer referenced
+    private void purge() {
+        if (queue.poll() == null)
+            return;
+        while (queue.poll() != null) {
+            // drain
+        }
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            if (marks[i].get() != null)
+                marks[live++] = marks[i];
+        }
+        Arrays.fill(marks, live, count, null);
+        count = live;
+    }
+
+    private final class Mark extends WeakReference<StickyPosition> {
+        long raw;
+        // Set once an edit holds on to the mark, after which no new position shares it
+        boolean captured;
+
+        Mark(StickyPosition position, long raw) {
+            super(position, queue);
+            this.raw = raw;
+        }
+    }
+
+    private final class StickyPosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            synchronized (PositionTracker.this) {
+                return offset(mark);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    // Marks captured from a removed range, with their offsets relative to its start
+    static final class Captured {
+        private final Mark[] marks;
+        private final int[] relative;
+
+        private Captured(Mark[] marks, int[] relative) {
+            this.marks = marks;
+            this.relative = relative;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Finds plain-text matches in a document without copying it.
+ *
+ * The document (or a snapshot of it) is read a block at a time through
+ * getText(offset, len, Segment) into a reusable window, and the window is scanned with Boyer-Moore-Horspool.
+ * Case is folded as characters enter the window, and whole-word matches are
+ * checked against the characters on either side. An engine allocates nothing
+ * after construction, so keep one per query and reuse it for "find next".
+ * It is not thread-safe.
+ */
+public class SearchEngine {
+    private static final int WINDOW = 16 * 1024;
+    // Case folding for Latin-1, which covers most text
+    private static final char[] FOLD = new char[256];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++)
+            FOLD[c] = Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private final String query;
+    private final boolean matchCase, wholeWord;
+    private final char[] pattern;
+    // Horspool shifts, indexed by the low byte of a character (colliding characters share the smaller shift)
+    private final int[] shift = new int[256];
+    private final char[] window;
+    private final Segment segment = new Segment();
+
+    public SearchEngine(String query, boolean matchCase, boolean wholeWord) {
+        if (query.isEmpty())
+            throw new IllegalArgumentException("Empty query");
+        this.query = query;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+        int m = query.length();
+        pattern = new char[m];
+        for (int i = 0; i < m; i++)
+            pattern[i] = fold(query.charAt(i));
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++)
+            shift[pattern[i] & 0xFF] = m - 1 - i;
+        window = new char[Math.max(WINDOW, 2 * m)];
+        segment.setPartialReturn(true);
+    }
+
+    // Method to check whether this engine searches for the same thing, so it can be reused
+    public boolean isFor(String query, boolean matchCase, boolean wholeWord) {
+        return this.query.equals(query) && this.matchCase == matchCase && this.wholeWord == wholeWord;
+    }
+
+    public int length() {
+        return pattern.length;
+    }
+
+    // Method to make an engine for the same query, for use on another thread
+    public SearchEngine copy() {
+        return new SearchEngine(query, matchCase, wholeWord);
+    }
+
+    // Method to find the first match at or after offset 'from', or -1
+    public int find(Document doc, int from) throws BadLocationException {
+        return find(doc, from, doc.getLength(), doc.getLength());
+    }
+
+    // Method to find the first match that lies within [from, to), or -1
+    public int find(Document doc, int from, int to) throws BadLocationException {
+        return find(doc, from, Math.min(to, doc.getLength()), doc.getLength());
+    }
+
+    // Method to find the first match in a snapshot at or after offset 'from', or -1
+    public int find(PieceTableContent.Snapshot text, int from) {
+        try {
+            return find(text, from, text.length(), text.length());
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e); // Snapshots do not throw it
+        }
+    }
+
+    // Method to check whether this engine finds a subset of what 'previous' finds, so its hits can be filtered
+    public boolean refines(SearchEngine previous) {
+        return !wholeWord && !previous.wholeWord && matchCase == previous.matchCase
+                && query.startsWith(previous.query);
+    }
+
+    // Method to search [from, to) of source, a Document or a Snapshot that is 'length' long
+    private int find(Object source, int from, int to, int length) throws BadLocationException {
+        int m = pattern.length;
+        int pos = Math.max(0, from); // Document offset of window[0]
+        int n = 0; // Characters in the window
+        while (true) {
+            n = fill(source, pos, n, to);
+            int i = 0;
+            while (i + m <= n) {
+                char last = window[i + m - 1];
+                if (last == pattern[m - 1] && matchesAt(i) && (!wholeWord || isWholeWord(source, pos, i, n, length)))
+                    return pos + i;
+                i += shift[last & 0xFF];
+            }
+            if (pos + n >= to)
+                return -1;
+            // Keep the unscanned tail, which may hold the start of a match
+            System.arraycopy(window, i, window, 0, n - i);
+            pos += i;
+            n -= i;
+        }
+    }
+
+    // Method to check whether the text between start and end is a match
+    public boolean matches(Document doc, int start, int end) throws BadLocationException {
+        if (end - start != pattern.length || start < 0 || end > doc.getLength())
+            return false;
+        int n = fill(doc, start, 0, end);
+        return n == pattern.length && window[n - 1] == pattern[n - 1] && matchesAt(0)
+                && (!wholeWord || isWholeWord(doc, start, 0, n, doc.getLength()));
+    }
+
+    // Method to top the window up with folded text from the document, returning the new count
+    private int fill(Object source, int pos, int n, int length) throws BadLocationException {
+        while (n < window.length && pos + n < length) {
+            read(source, pos + n, Math.min(window.length - n, length - pos - n));
+            if (matchCase) {
+                System.arraycopy(segment.array, segment.offset, window, n, segment.count);
+                n += segment.count;
+                continue;
+            }
+            char[] array = segment.array;
+            for (int j = segment.offset, end = j + segment.count; j < end; j++) {
+                char c = array[j];
+                window[n++] = c < 256 ? FOLD[c] : Character.toLowerCase(Character.toUpperCase(c));
+            }
+        }
+        return n;
+    }
+
+    private boolean matchesAt(int i) {
+        for (int j = pattern.length - 2; j >= 0; j--) {
+            if (window[i + j] != pattern[j])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isWholeWord(Object source, int pos, int i, int n, int length) throws BadLocationException {
+        int before = pos + i - 1, after = pos + i + pattern.length;
+        if (before >= 0 && isWordChar(i > 0 ? window[i - 1] : charAt(source, before)))
+            return false;
+        return after >= length || !isWordChar(i + pattern.length < n ? window[i + pattern.length] : charAt(source, after));
+    }
+
+    private char charAt(Object source, int offset) throws BadLocationException {
+        read(source, offset, 1);
+        return segment.array[segment.offset];
+    }
+
+    private void read(Object source, int offset, int len) throws BadLocationException {
+        if (source instanceof Document)
+            ((Document) source).getText(offset, len, segment);
+        else
+            ((PieceTableContent.Snapshot) source).getChars(offset, len, segment);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private char fold(char c) {
+        if (matchCase)
+            return c;
+        return c < 256 ? FOLD[c] : Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,111 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.nio.file.Path;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.Element;
+
+/**
+ * Coalesces status bar refresh requests into at most one refresh per frame.
+ *
+ * Key, caret and document listeners only call requestUpdate(), which starts a
+ * one-shot timer if none is pending. When it fires, the labels are rebuilt once
+ * and setText is skipped for any label whose values did not change, so held
+ * keys and auto-repeat no longer relayout the status bar on every event.
+ * All methods must be called on the EDT.
+ */
+public class StatusScheduler implements ActionListener {
+    // Roughly one frame at 60 Hz
+    private static final int FRAME_MILLIS = 16;
+
+    private final Notepad notepad;
+    private final Timer timer;
+
+    private long requestCount, refreshCount;
+    private String activity;
+    // Time the EDT has spent stalled so far, and the report on the last stall
+    private long stallNanos, lastStallNanos;
+    private Path stallReport;
+
+    // Values currently shown, used to skip redundant setText calls
+    private int shownChars = -1, shownWords = -1, shownLine = -1, shownColumn = -1;
+    private String shownActivity;
+    private long shownStall;
+
+    public StatusScheduler(Notepad notepad) {
+        this.notepad = notepad;
+        timer = new Timer(FRAME_MILLIS, this);
+        timer.setRepeats(false);
+        timer.setCoalesce(true);
+    }
+
+    // Method to ask for a status bar refresh on the next frame
+    public void requestUpdate() {
+        requestCount++;
+        if (!timer.isRunning())
+            timer.start();
+    }
+
+    // Method to show a transient message such as load or save progress (null clears it)
+    public void setActivity(String activity) {
+        this.activity = activity;
+        requestUpdate();
+    }
+
+    // Method to show the total time the EDT has stalled, after a stall of last nanoseconds reported in report
+    public void setStalls(long total, long last, Path report) {
+        stallNanos = total;
+        lastStallNanos = last;
+        stallReport = report;
+        requestUpdate();
+    }
+
+    // Number of requests that were merged into an earlier pending refresh
+    public long getCoalescedCount() {
+        return requestCount - refreshCount;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        refresh();
+    }
+
+    private void refresh() {
+        refreshCount++;
+
+        int charCount = notepad.documentCounter.getCharCount();
+        int wordCount = notepad.documentCounter.getWordCount();
+        notepad.charCount = charCount;
+        notepad.wordCount = wordCount;
+
+        JTextArea textarea = notepad.textarea;
+        int caretPos = textarea.getCaretPosition();
+        Element root = textarea.getDocument().getDefaultRootElement();
+        int line = root.getElementIndex(caretPos);
+        int lineNum = line + 1;
+        int column = caretPos - root.getElement(line).getStartOffset() + 1;
+        notepad.lineNum = lineNum;
+
+        // Update status bar only where something visible changed
+        if (charCount != shownChars || wordCount != shownWords) {
+            notepad.statusLabel.setText(String.format("Characters: %d | Words: %d", charCount, wordCount));
+            shownChars = charCount;
+            shownWords = wordCount;
+        }
+        if (lineNum != shownLine || column != shownColumn) {
+            notepad.positionLabel.setText(String.format("Line: %d, Column: %d", lineNum, column));
+            shownLine = lineNum;
+            shownColumn = column;
+        }
+        if (activity == null ? shownActivity != null : !activity.equals(shownActivity)) {
+            notepad.activityLabel.setText(activity == null ? "" : activity);
+            shownActivity = activity;
+        }
+        if (stallNanos != shownStall) {
+            notepad.stallLabel.setText(String.format("EDT stalled: %.1f s", stallNanos / 1e9));
+            notepad.stallLabel.setToolTipText(String.format("Last stall %.1f s%s", lastStallNanos / 1e9,
+                    stallReport != null ? ", sampled in " + stallReport : ""));
+            shownStall = stallNanos;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps the lexer state at the start of every line of a document, so that any
+ * line can be colored on its own.
+ *
+ * The states are computed on a background thread from a snapshot of the text
+ * and handed to the EDT in batches. An edit marks its lines as damaged; the
+ * next pass relexes from the first damaged line and stops as soon as a line
+ * after the damage starts in the same state as before, so typing usually
+ * relexes a single line. A pass that falls behind an edit gives up and the
+ * next one picks up where the last batch left off.
+ *
+ * Nothing is colored here. SyntaxTextAreaUI lexes each visible line again when
+ * painting it, starting from its stored state. Lines longer than MAX_LINE are
+ * left plain and pass their start state on unchanged.
+ */
+public class SyntaxHighlighter implements DocumentListener {
+    public static final int MAX_LINE = 64 * 1024;
+    // State of a line that has not been lexed yet
+    public static final int UNKNOWN = -1;
+    // Lines lexed between handing states to the EDT
+    private static final int BATCH = 16 * 1024;
+    private static final ExecutorService LEXER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(task);
+        thread.setName("Syntax highlighting");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final EditorDocument doc;
+    private final Lexer lexer;
+    private final JTextComponent host;
+
+    // Start state of each line; only used on the EDT, a pass gets a copy of the states it compares with
+    private int[] states;
+    private int lines;
+    // Lines that were edited and still need lexing, from damagedFrom (or -1 for none) to damagedTo
+    private int damagedFrom = -1, damagedTo;
+    private boolean queued;
+    // Bumped on every edit, so that a pass over an older snapshot gives up
+    private volatile int version;
+
+    private SyntaxHighlighter(EditorDocument doc, Lexer lexer, JTextComponent host) {
+        this.doc = doc;
+        this.lexer = lexer;
+        this.host = host;
+        lines = doc.getDefaultRootElement().getElementCount();
+        states = new int[Math.max(16, lines)];
+        Arrays.fill(states, UNKNOWN);
+        states[0] = 0;
+        damage(0, lines - 1);
+    }
+
+    // Method to highlight host's document with lexer from now on, or to stop if lexer is null
+    public static void install(JTextComponent host, Lexer lexer) {
+        Document document = host.getDocument();
+        SyntaxHighlighter old = of(document);
+        if (old != null && old.lexer == lexer)
+            return;
+        if (old != null) {
+            document.removeDocumentListener(old);
+            document.putProperty(SyntaxHighlighter.class, null);
+            old.version++;
+        }
+        if (lexer != null && document instanceof EditorDocument) {
+            SyntaxHighlighter highlighter = new SyntaxHighlighter((EditorDocument) document, lexer, host);
+            document.putProperty(SyntaxHighlighter.class, highlighter);
+            document.addDocumentListener(highlighter);
+        }
+        host.repaint();
+    }
+
+    // The highlighter installed on doc, or null
+    public static SyntaxHighlighter of(Document doc) {
+        Object highlighter = doc.getProperty(SyntaxHighlighter.class);
+        return highlighter instanceof SyntaxHighlighter ? (SyntaxHighlighter) highlighter : null;
+    }
+
+    public Lexer getLexer() {
+        return lexer;
+    }
+
+    // The state line starts in, or UNKNOWN if it has not been lexed yet; call on the EDT
+    public int stateAt(int line) {
+        return line < lines ? states[line] : UNKNOWN;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        edited(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        edited(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    private void edited(DocumentEvent e) {
+        Element root = doc.getDefaultRootElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change == null) {
+            int line = root.getElementIndex(e.getOffset());
+            damage(line, line);
+            return;
+        }
+        int index = change.getIndex();
+        int removed = change.getChildrenRemoved().length;
+        int added = change.getChildrenAdded().length;
+        replaceLines(index, removed, added);
+        damage(index, index + added - 1);
+    }
+
+    // Method to replace the states of removed lines at index with unknown ones for the added lines
+    private void replaceLines(int index, int removed, int added) {
+        int delta = added - removed;
+        if (lines + delta > states.length)
+            states = Arrays.copyOf(states, Math.max(lines + delta, states.length + states.length / 2));
+        System.arraycopy(states, index + removed, states, index + added, lines - index - removed);
+        // The first line still starts where it did, so its state stands
+        Arrays.fill(states, index + 1, index + added, UNKNOWN);
+        lines += delta;
+        if (damagedFrom >= 0 && damagedTo >= index + removed)
+            damagedTo += delta;
+        else if (damagedFrom >= 0 && damagedTo >= index)
+            damagedTo = index;
+        if (damagedFrom > index)
+            damagedFrom = index;
+    }
+
+    // Method to mark lines first to last for relexing and schedule a pass
+    private void damage(int first, int last) {
+        if (damagedFrom < 0) {
+            damagedFrom = first;
+            damagedTo = last;
+        } else {
+            damagedFrom = Math.min(damagedFrom, first);
+            damagedTo = Math.max(damagedTo, last);
+        }
+        version++;
+        if (!queued) {
+            // After the current event, so that a burst of edits starts a single pass
+            queued = true;
+            SwingUtilities.invokeLater(this::startPass);
+        }
+    }
+
+    private void startPass() {
+        queued = false;
+        if (damagedFrom < 0 || of(doc) != this)
+            return;
+        int line = damagedFrom;
+        int to = damagedTo;
+        int offset = doc.getDefaultRootElement().getElement(line).getStartOffset();
+        int state = states[line];
+        // The states of up to BATCH lines after the damage, as they were before it
+        int[] old = Arrays.copyOfRange(states, to + 1, Math.min(lines, to + 1 + BATCH));
+        int passVersion = version;
+        PieceTableContent.Snapshot text = doc.snapshot();
+        LEXER.execute(() -> lex(passVersion, text, line, to, old, offset, state));
+    }
+
+    // Method run on the lexer thread: lexes from line until the states match old past to, or the text ends
+    private void lex(int passVersion, PieceTableContent.Snapshot text, int line, int to, int[] old, int offset,
+            int state) {
+        char[] lineText = new char[MAX_LINE];
+        // The part of the text read last, which usually holds many lines
+        Segment chunk = new Segment();
+        int chunkStart = offset, chunkEnd = offset;
+        int length = text.length();
+        int[] batch = new int[BATCH];
+        int count = 0;
+        int batchFrom = line + 1;
+        while (version == passVersion) {
+            // Gather the line, up to MAX_LINE characters of it
+            int end = offset;
+            int n = 0;
+            while (end < length) {
+                if (end == chunkEnd) {
+                    text.getChars(end, length - end, chunk);
+                    chunkStart = end;
+                    chunkEnd = end + chunk.count;
+                }
+                int from = chunk.offset + end - chunkStart;
+                int i = from;
+                int stop = chunk.offset + chunk.count;
+                while (i < stop && chunk.array[i] != '\n')
+                    i++;
+                int run = i - from;
+                if (n + run <= MAX_LINE)
+                    System.arraycopy(chunk.array, from, lineText, n, run);
+                n += run;
+                end += run;
+                if (i < stop)
+                    break;
+            }
+            if (n <= MAX_LINE)
+                state = lexer.lex(lineText, 0, n, state, null);
+            if (end >= length) {
+                publish(passVersion, batchFrom, batch, count, true);
+                return;
+            }
+            line++;
+            offset = end + 1;
+            batch[count++] = state;
+            if (line > to && line - to - 1 == old.length) {
+                // Past the old states this pass was given, so a new pass goes on from here
+                publish(passVersion, batchFrom, batch, count, false);
+                int last = line;
+                SwingUtilities.invokeLater(() -> resume(passVersion, last));
+                return;
+            }
+            if (line > to && old[line - to - 1] == state) {
+                publish(passVersion, batchFrom, batch, count, true); // Caught up with the old states
+                return;
+            }
+            if (count == BATCH) {
+                publish(passVersion, batchFrom, batch, count, false);
+                batch = new int[BATCH];
+                batchFrom = line + 1;
+                count = 0;
+            }
+        }
+    }
+
+    private void publish(int passVersion, int from, int[] batch, int count, boolean finished) {
+        SwingUtilities.invokeLater(() -> apply(passVersion, from, batch, count, finished));
+    }
+
+    // Method to store a batch of states on the EDT, unless the text has changed since it was lexed
+    private void apply(int passVersion, int from, int[] batch, int count, boolean finished) {
+        if (passVersion != version)
+            return;
+        int changedFrom = -1, changedTo = -1;
+        for (int i = 0; i < count; i++) {
+            if (states[from + i] != batch[i]) {
+                states[from + i] = batch[i];
+                if (changedFrom < 0)
+                    changedFrom = from + i;
+                changedTo = from + i;
+            }
+        }
+        // The next pass resumes from the last line whose start state is now known
+        damagedFrom = finished ? -1 : from + count - 1;
+        if (changedFrom >= 0)
+            repaintLines(changedFrom, changedTo);
+    }
+
+    // Method to start a pass from line, where the last one stopped, unless the text has changed since
+    private void resume(int passVersion, int line) {
+        if (passVersion == version)
+            damage(line, line);
+    }
+
+    // Method to repaint the host if any of the lines first to last are on screen
+    private void repaintLines(int first, int last) {
+        if (host.getDocument() != doc)
+            return;
+        Rectangle visible = host.getVisibleRect();
+        Element root = doc.getDefaultRootElement();
+        int top = root.getElementIndex(host.viewToModel2D(new Point(0, visible.y)));
+        int bottom = root.getElementIndex(host.viewToModel2D(new Point(0, visible.y + visible.height)));
+        if (first <= bottom && last >= top)
+            host.repaint(visible);
+    }
+}
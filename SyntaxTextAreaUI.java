@@ -0,0 +1,144 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import javax.swing.JTextArea;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.PlainView;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.WrappedPlainView;
+
+/**
+ * Text area UI whose views color the text when the document has a
+ * SyntaxHighlighter installed.
+ *
+ * Colors are never stored in the document. When a line is painted, it is
+ * lexed from its stored start state up to the end of what is painted, so the
+ * work per repaint is bounded by what is on screen, however large the file.
+ * Selected text and lines not lexed yet are painted as usual.
+ */
+public class SyntaxTextAreaUI extends BasicTextAreaUI {
+    // Colors for each token type, readable on both the dark and light backgrounds
+    private static final Color[] COLORS = {
+        null, // TEXT keeps the text area's foreground
+        new Color(204, 120, 50), // KEYWORD
+        new Color(106, 160, 89), // STRING
+        new Color(104, 151, 187), // NUMBER
+        new Color(128, 128, 128), // COMMENT
+        new Color(152, 118, 170), // NAME
+    };
+
+    @Override
+    public View create(Element elem) {
+        if (Boolean.TRUE.equals(elem.getDocument().getProperty("i18n")))
+            return super.create(elem); // Bidirectional text needs the standard views
+        JTextComponent c = getComponent();
+        if (c instanceof JTextArea && ((JTextArea) c).getLineWrap())
+            return new WrappedView(elem, ((JTextArea) c).getWrapStyleWord());
+        return new UnwrappedView(elem);
+    }
+
+    // Method to draw text[p0, p1) in token colors, returning where it ended, or NaN to paint it plain
+    private static float drawTokens(View view, TabExpander tabs, Graphics2D g, float x, float y, int p0, int p1)
+            throws BadLocationException {
+        Document doc = view.getDocument();
+        SyntaxHighlighter highlighter = SyntaxHighlighter.of(doc);
+        if (highlighter == null)
+            return Float.NaN;
+        Element root = doc.getDefaultRootElement();
+        int line = root.getElementIndex(p0);
+        int start = root.getElement(line).getStartOffset();
+        int state = highlighter.stateAt(line);
+        if (state == SyntaxHighlighter.UNKNOWN || p1 - start > SyntaxHighlighter.MAX_LINE)
+            return Float.NaN;
+        Segment text = new Segment();
+        doc.getText(start, p1 - start, text);
+        JTextComponent host = (JTextComponent) view.getContainer();
+        Color plain = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        TokenPainter painter = new TokenPainter(text, start, p0, p1, g, x, y, tabs, plain);
+        highlighter.getLexer().lex(text.array, text.offset, text.offset + text.count, state, painter);
+        painter.draw(text.offset + text.count, Lexer.TEXT);
+        return painter.x;
+    }
+
+    // Draws the tokens of one line as the lexer reports them, filling the gaps with plain text
+    private static final class TokenPainter implements Lexer.TokenSink {
+        private final Segment text;
+        private final int start, p0, p1;
+        private final Graphics2D g;
+        private final float y;
+        private final TabExpander tabs;
+        private final Color plain;
+        private float x;
+        // Index into text.array up to which the line has been drawn
+        private int drawn;
+
+        TokenPainter(Segment text, int start, int p0, int p1, Graphics2D g, float x, float y, TabExpander tabs,
+                Color plain) {
+            this.text = text;
+            this.start = start;
+            this.p0 = p0;
+            this.p1 = p1;
+            this.g = g;
+            this.x = x;
+            this.y = y;
+            this.tabs = tabs;
+            this.plain = plain;
+            drawn = text.offset;
+        }
+
+        @Override
+        public void token(int from, int to, int type) {
+            draw(from, Lexer.TEXT);
+            draw(to, type);
+        }
+
+        // Method to draw from where the last run ended up to index to, clipped to p0-p1
+        void draw(int to, int type) {
+            int a = Math.max(drawn, toArray(p0));
+            int b = Math.min(to, toArray(p1));
+            drawn = Math.max(drawn, to);
+            if (a >= b)
+                return;
+            Color color = type < COLORS.length ? COLORS[type] : null;
+            g.setColor(color != null ? color : plain);
+            Segment run = new Segment(text.array, a, b - a);
+            x = Utilities.drawTabbedText(run, x, y, g, tabs, start + a - text.offset);
+        }
+
+        private int toArray(int offset) {
+            return text.offset + offset - start;
+        }
+    }
+
+    private static final class UnwrappedView extends PlainView {
+        UnwrappedView(Element elem) {
+            super(elem);
+        }
+
+        @Override
+        protected float drawUnselectedText(Graphics2D g, float x, float y, int p0, int p1)
+                throws BadLocationException {
+            float end = drawTokens(this, this, g, x, y, p0, p1);
+            return Float.isNaN(end) ? super.drawUnselectedText(g, x, y, p0, p1) : end;
+        }
+    }
+
+    private static final class WrappedView extends WrappedPlainView {
+        WrappedView(Element elem, boolean wordWrap) {
+            super(elem, wordWrap);
+        }
+
+        @Override
+        protected float drawUnselectedText(Graphics2D g, float x, float y, int p0, int p1)
+                throws BadLocationException {
+            float end = drawTokens(this, this, g, x, y, p0, p1);
+            return Float.isNaN(end) ? super.drawUnselectedText(g, x, y, p0, p1) : end;
+        }
+    }
+}
@@ -1,22 +1,15 @@
 import java.awt.event.*;
-import javax.swing.JLabel;
-import javax.swing.JTextArea;
 
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
-import javax.swing.text.BadLocationException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
-public class TaActionListener implements KeyListener, CaretListener {
+public class TaActionListener implements KeyListener, CaretListener, DocumentListener {
     private Notepad notepad;
-    private JTextArea textarea;
-    private JLabel statusLabel;
-    private JLabel positionLabel;
 
     public TaActionListener(Notepad notepad) {
         this.notepad = notepad;
-        this.textarea = notepad.textarea;
-        this.statusLabel = notepad.statusLabel;
-        this.positionLabel = notepad.positionLabel;
     }
 
     @Override
@@ -39,22 +32,23 @@ public class TaActionListener implements KeyListener, CaretListener {
         updateStatus();
     }
 
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        updateStatus();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        updateStatus();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attribute changes are not shown in the status bar
+    }
+
     private void updateStatus() {
-        String text = textarea.getText();
-        int charCount = text.length();
-        int wordCount = text.trim().isEmpty() ? 0 : text.trim().split("\\s+").length;
-        
-        int lineNum = 1;
-        int column = 0;
-        try {
-            int caretPos = textarea.getCaretPosition();
-            lineNum = textarea.getLineOfOffset(caretPos) + 1;
-            column = caretPos - textarea.getLineStartOffset(lineNum - 1) + 1;
-        } catch (Exception ex) {
-            // ignore
-        }
-        // Update status bar
-        statusLabel.setText(String.format("Characters: %d | Words: %d", charCount, wordCount));
-        positionLabel.setText(String.format("Line: %d, Column: %d", lineNum, column));
+        // The scheduler merges bursts of events into one refresh per frame
+        notepad.statusScheduler.requestUpdate();
     }
 }
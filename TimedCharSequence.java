@@ -0,0 +1,63 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * CharSequence wrapper that stops a regular expression running too long.
+ *
+ * java.util.regex cannot be interrupted, but it reads its input through
+ * charAt. Every few thousand reads this wrapper checks a deadline and the
+ * thread's interrupt flag, and throws to abort the match. A pattern with
+ * catastrophic backtracking is therefore cut off instead of hanging a thread.
+ */
+public class TimedCharSequence implements CharSequence {
+    // Time one find() may take before it is abandoned, in milliseconds
+    public static final long BUDGET_MILLIS = Long.getLong("notepad.regexTimeBudget", 5000);
+
+    private final CharSequence text;
+    private final long budgetNanos;
+    private long deadline;
+    private int reads;
+
+    public TimedCharSequence(CharSequence text) {
+        this.text = text;
+        this.budgetNanos = BUDGET_MILLIS * 1_000_000L;
+        restart();
+    }
+
+    // Method to give the next match attempt a fresh budget
+    public void restart() {
+        deadline = System.nanoTime() + budgetNanos;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if ((++reads & 0xFFF) == 0) {
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException();
+            if (System.nanoTime() > deadline)
+                throw new TimeoutException();
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    // Thrown when a match runs past its budget
+    public static class TimeoutException extends RuntimeException {
+        public TimeoutException() {
+            super("Regular expression took longer than " + BUDGET_MILLIS + " ms");
+        }
+    }
+}
@@ -0,0 +1,420 @@
+import java.awt.EventQueue;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Undo manager that groups typing into steps and bounds its memory by size.
+ *
+ * Edits made by one user action, and runs of typed characters or backspaces
+ * without a pause or a word break, are undone as one step. Each step records
+ * the text it inserted and removed. When the steps held in memory add up to
+ * more than the budget, the oldest are written to a temporary file and
+ * replayed from there if they are undone. Only after MAX_STEPS steps is the
+ * oldest history dropped.
+ *
+ * A replayed step makes new line elements and positions, which the document
+ * events of the later steps do not know about. So only a run of the oldest
+ * steps is ever spilled, and once one of them is undone the steps after it
+ * are undone and redone from their text too.
+ */
+public class UndoHistory extends UndoManager {
+    // Estimated bytes of edited text kept in memory before old steps go to disk
+    public static final long BUDGET = Long.getLong("notepad.undoBudget", 16L * 1024 * 1024);
+    private static final int MAX_STEPS = 100_000;
+    // Typing after a pause this long starts a new step
+    private static final long PAUSE_MILLIS = 1000;
+    // Rough cost of one recorded change besides its text
+    private static final int OVERHEAD = 64;
+
+    // The latest step, while it can still take more typing
+    private Step open;
+    private long bytes;
+    // True while a spilled step is replayed, so its edits are not recorded again
+    private boolean replaying;
+    private FileChannel spillFile;
+
+    public UndoHistory() {
+        setLimit(MAX_STEPS);
+    }
+
+    // Estimated bytes of history held in memory
+    public synchronized long getMemoryUsage() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized void undoableEditHappened(UndoableEditEvent e) {
+        if (replaying)
+            return;
+        UndoableEdit edit = e.getEdit();
+        Change change = capture(e.getSource(), edit);
+        boolean onEdt = EventQueue.isDispatchThread();
+        long time = onEdt ? EventQueue.getMostRecentEventTime() : System.currentTimeMillis();
+        if (open != null && lastEdit() == open && open.accepts(change, time, onEdt)) {
+            open.add(edit, change, time);
+        } else {
+            open = new Step((EditorDocument) (change != null ? e.getSource() : null), edit, change, time);
+            addEdit(open);
+        }
+        if (change != null)
+            bytes += change.cost();
+        if (bytes > BUDGET)
+            spill();
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        open = null;
+        UndoableEdit edit = editToBeUndone();
+        super.undo();
+        if (edit instanceof SpilledStep)
+            replayAfter(edits.indexOf(edit));
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        open = null;
+        super.redo();
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        open = null;
+        bytes = 0;
+        if (spillFile != null) {
+            try {
+                spillFile.truncate(0);
+            } catch (IOException e) {
+                System.err.println("Error clearing undo history!");
+            }
+        }
+    }
+
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            UndoableEdit edit = edits.get(i);
+            if (edit instanceof Step)
+                bytes -= ((Step) edit).cost;
+            if (edit == open)
+                open = null;
+        }
+        super.trimEdits(from, to);
+    }
+
+    // Method to record the text an edit inserted or removed, or null for edits that cannot be replayed
+    private static Change capture(Object source, UndoableEdit edit) {
+        if (!(source instanceof EditorDocument) || !(edit instanceof DocumentEvent))
+            return null;
+        EditorDocument doc = (EditorDocument) source;
+        DocumentEvent event = (DocumentEvent) edit;
+        if (event.getType() == DocumentEvent.EventType.INSERT)
+            return new Change(true, event.getOffset(), doc.snapshot(event.getOffset(), event.getLength()));
+        if (event.getType() == DocumentEvent.EventType.REMOVE)
+            return new Change(false, event.getOffset(), doc.getRemovedText());
+        return null;
+    }
+
+    // Method to move the oldest steps to disk until the ones in memory fit the budget again
+    private void spill() {
+        long target = BUDGET * 3 / 4;
+        for (int i = 0; i < edits.size() && bytes > target; i++) {
+            UndoableEdit edit = edits.get(i);
+            if (edit instanceof SpilledStep)
+                continue;
+            if (edit == open)
+                return;
+            Step step = (Step) edit;
+            if (step.changes == null) {
+                // It cannot be replayed, so it and everything before it go, keeping the spilled steps a prefix
+                trimEdits(0, i);
+                i = -1;
+                continue;
+            }
+            try {
+                edits.set(i, step.spill());
+            } catch (IOException e) {
+                System.err.println("Error writing undo history!");
+                return;
+            }
+            bytes -= step.cost;
+            step.die();
+        }
+    }
+
+    // Method to switch the steps after index to replaying their text, since their document events no longer apply
+    private void replayAfter(int index) {
+        for (int i = index + 1; i < edits.size(); i++) {
+            UndoableEdit edit = edits.get(i);
+            if (edit instanceof Step && !((Step) edit).replayFromText()) {
+                trimEdits(i, edits.size() - 1); // Cannot be redone without them
+                return;
+            }
+        }
+    }
+
+    // Method to apply changes in order, or reverse them in reverse order, without recording them again
+    private boolean replay(EditorDocument doc, ArrayList<Change> changes, boolean forward) {
+        replaying = true;
+        try {
+            for (int i = 0; i < changes.size(); i++)
+                changes.get(forward ? i : changes.size() - 1 - i).apply(doc, forward);
+        } catch (BadLocationException e) {
+            return false;
+        } finally {
+            replaying = false;
+        }
+        return true;
+    }
+
+    private FileChannel spillFile() throws IOException {
+        if (spillFile == null) {
+            Path path = Files.createTempFile("notepad-undo", ".tmp");
+            path.toFile().deleteOnExit();
+            spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return spillFile;
+    }
+
+    // Text inserted or removed at an offset
+    private static final class Change {
+        final boolean insert;
+        final int offset;
+        final CharSequence text;
+
+        Change(boolean insert, int offset, CharSequence text) {
+            this.insert = insert;
+            this.offset = offset;
+            this.text = text;
+        }
+
+        int length() {
+            return text.length();
+        }
+
+        long cost() {
+            return 2L * text.length() + OVERHEAD;
+        }
+
+        // Method to apply the change to the document, or reverse it
+        void apply(EditorDocument doc, boolean forward) throws BadLocationException {
+            if (insert == forward)
+                doc.insertString(offset, text.toString(), null);
+            else
+                doc.remove(offset, text.length());
+        }
+    }
+
+    // One undo step: the document edits it undoes, and their text for spilling
+    private final class Step extends AbstractUndoableEdit {
+        private final EditorDocument doc;
+        // Null once the step is undone and redone from its text instead
+        private ArrayList<UndoableEdit> parts = new ArrayList<>();
+        // Null when a part cannot be replayed from text, which keeps the step in memory
+        private ArrayList<Change> changes;
+        private long time;
+        private long cost;
+
+        Step(EditorDocument doc, UndoableEdit edit, Change change, long time) {
+            this.doc = doc;
+            if (change != null)
+                changes = new ArrayList<>();
+            add(edit, change, time);
+        }
+
+        // Method to check whether an edit continues this step
+        boolean accepts(Change change, long time, boolean onEdt) {
+            if (changes == null || change == null)
+                return false;
+            if (onEdt && time == this.time)
+                return true; // Same user action, such as typing over a selection
+            if (time - this.time > PAUSE_MILLIS || change.length() != 1)
+                return false;
+            Change last = changes.get(changes.size() - 1);
+            if (change.insert && last.insert) {
+                if (change.offset != last.offset + last.length())
+                    return false;
+                // A word and the spaces after it are one step; the next word or line starts another
+                char previous = last.text.charAt(last.length() - 1), c = change.text.charAt(0);
+                return previous != '\n' && !(Character.isWhitespace(previous) && !Character.isWhitespace(c));
+            }
+            if (!change.insert && !last.insert) {
+                // Backspace or Delete held down
+                return change.offset == last.offset || change.offset + 1 == last.offset;
+            }
+            return false;
+        }
+
+        void add(UndoableEdit edit, Change change, long time) {
+            parts.add(edit);
+            this.time = time;
+            if (change == null) {
+                changes = null;
+                return;
+            }
+            cost += change.cost();
+            if (changes == null)
+                return;
+            Change last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+            if (last != null && last.insert && change.insert && change.offset == last.offset + last.length()) {
+                // Typed text is contiguous in the document, so record it as one run
+                changes.set(changes.size() - 1,
+                    new Change(true, last.offset, doc.snapshot(last.offset, last.length() + change.length())));
+            } else {
+                changes.add(change);
+            }
+        }
+
+        // Method to undo and redo from the recorded text from now on, returning false if there is none
+        boolean replayFromText() {
+            if (parts == null)
+                return true;
+            if (changes == null)
+                return false;
+            for (UndoableEdit part : parts)
+                part.die();
+            parts = null;
+            return true;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            if (parts == null) {
+                if (!replay(doc, changes, false))
+                    throw new CannotUndoException();
+                return;
+            }
+            for (int i = parts.size() - 1; i >= 0; i--)
+                parts.get(i).undo();
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            if (parts == null) {
+                if (!replay(doc, changes, true))
+                    throw new CannotRedoException();
+                return;
+            }
+            for (UndoableEdit part : parts)
+                part.redo();
+        }
+
+        @Override
+        public void die() {
+            if (parts != null) {
+                for (UndoableEdit part : parts)
+                    part.die();
+            }
+            super.die();
+        }
+
+        // Method to write the changes to the spill file and return the step that replays them
+        SpilledStep spill() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(changes.size());
+            Segment segment = new Segment();
+            for (Change change : changes) {
+                out.writeBoolean(change.insert);
+                out.writeInt(change.offset);
+                out.writeInt(change.length());
+                PieceTableContent.Snapshot text = (PieceTableContent.Snapshot) change.text;
+                for (int done = 0; done < change.length(); done += segment.count) {
+                    text.getChars(done, change.length() - done, segment);
+                    for (int j = 0; j < segment.count; j++)
+                        out.writeChar(segment.array[segment.offset + j]);
+                }
+            }
+            FileChannel file = spillFile();
+            long position = file.size();
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining())
+                file.write(buf, position + buf.position());
+            return new SpilledStep(doc, position, bytes.size(), canUndo());
+        }
+    }
+
+    // A step whose text is in the spill file
+    private final class SpilledStep extends AbstractUndoableEdit {
+        private final EditorDocument doc;
+        private final long position;
+        private final int size;
+        private boolean done;
+
+        SpilledStep(EditorDocument doc, long position, int size, boolean done) {
+            this.doc = doc;
+            this.position = position;
+            this.size = size;
+            this.done = done;
+        }
+
+        @Override
+        public boolean canUndo() {
+            return done;
+        }
+
+        @Override
+        public boolean canRedo() {
+            return !done;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            if (!canUndo() || !replay(false))
+                throw new CannotUndoException();
+            done = false;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            if (!canRedo() || !replay(true))
+                throw new CannotRedoException();
+            done = true;
+        }
+
+        // Method to read the changes back and apply them in order, or reverse them in reverse order
+        private boolean replay(boolean forward) {
+            ArrayList<Change> changes = new ArrayList<>();
+            try {
+                ByteBuffer buf = ByteBuffer.allocate(size);
+                while (buf.hasRemaining()) {
+                    if (spillFile.read(buf, position + buf.position()) < 0)
+                        return false;
+                }
+                buf.flip();
+                for (int n = buf.getInt(); n > 0; n--) {
+                    boolean insert = buf.get() != 0;
+                    int offset = buf.getInt();
+                    char[] text = new char[buf.getInt()];
+                    buf.asCharBuffer().get(text);
+                    buf.position(buf.position() + 2 * text.length);
+                    changes.add(new Change(insert, offset, new String(text)));
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading undo history!");
+                return false;
+            }
+            return UndoHistory.this.replay(doc, changes, forward);
+        }
+    }
+}
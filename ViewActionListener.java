@@ -1,11 +1,15 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import javax.swing.JOptionPane;
 
 public class ViewActionListener implements ActionListener {
 
     private Notepad notepad;
     // Variables to store the status of word wrap and line wrap
     private boolean wWrap, lWrap, sDetails;
+    private LineNumberGutter gutter;
+    private PerformanceHud hud;
 
     public ViewActionListener(Notepad notepad) {
         this.notepad = notepad;
@@ -16,13 +20,18 @@ public class ViewActionListener implements ActionListener {
         switch (event.getActionCommand()) {
             case "Word Wrap":
                 wWrap = notepad.wordWrap.isSelected();
-                notepad.textarea.setLineWrap(wWrap);
-                notepad.textarea.setWrapStyleWord(wWrap);
+                EditorEvents.relayout(notepad.textarea, "Word Wrap " + (wWrap ? "on" : "off"), () -> {
+                    notepad.textarea.setLineWrap(wWrap);
+                    notepad.textarea.setWrapStyleWord(wWrap);
+                });
                 break;
 
             case "Line Numbers":
                 lWrap = notepad.lineWrap.isSelected();
-                // TODO: Implement line numbers display
+                if (gutter != null)
+                    gutter.dispose();
+                gutter = lWrap ? new LineNumberGutter(notepad.textarea) : null;
+                notepad.scrollPane.setRowHeaderView(gutter);
                 break;
 
             case "Status Bar":
@@ -30,6 +39,31 @@ public class ViewActionListener implements ActionListener {
                 notepad.statusBar.setVisible(sDetails);
                 break;
 
+            case "Performance HUD":
+                if (notepad.showHud.isSelected()) {
+                    if (hud == null)
+                        hud = new PerformanceHud(notepad); // Kept when hidden, so the session figures go on
+                    hud.showHud();
+                    notepad.hud = hud;
+                } else if (notepad.hud != null) {
+                    notepad.hud.hideHud();
+                    notepad.hud = null;
+                }
+                break;
+
+            case "Save Performance Histograms":
+                if (hud == null) {
+                    JOptionPane.showMessageDialog(notepad, "Turn on the Performance HUD to record histograms.",
+                            "Performance HUD", JOptionPane.INFORMATION_MESSAGE);
+                    break;
+                }
+                try {
+                    notepad.statusScheduler.setActivity("Histograms saved to " + hud.dump());
+                } catch (IOException e) {
+                    System.err.println("Error saving histograms!");
+                }
+                break;
+
             default:
                 break;
         }
@@ -0,0 +1,81 @@
+import java.util.Random;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import javax.swing.undo.UndoManager;
+
+/**
+ * Compares PieceTableContent with Swing's GapContent on random edits.
+ *
+ * A document of the given size (100 MB of text by default) is built the way
+ * FileLoader does it, then the same seeded sequence of small inserts and
+ * removes at random offsets is applied to each content and undone again.
+ *
+ * Run from the repository root:
+ *   javac -d out *.java bench/ContentBenchmark.java
+ *   java -Xmx4g -cp out ContentBenchmark [megabytes] [edits]
+ */
+public class ContentBenchmark {
+    public static void main(String[] args) throws BadLocationException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        String chunk = makeChunk(4 * 1024 * 1024);
+        for (int round = 0; round < 2; round++) {
+            // First round warms up the JIT
+            run("GapContent", new GapContent(), chunk, megabytes, edits);
+            System.gc();
+            run("PieceTableContent", new PieceTableContent(), chunk, megabytes, edits);
+            System.gc();
+        }
+    }
+
+    private static void run(String name, AbstractDocument.Content content, String chunk, int megabytes, int edits)
+            throws BadLocationException {
+        PlainDocument doc = new PlainDocument(content);
+        long t0 = System.nanoTime();
+        long target = megabytes * 1024L * 1024L;
+        while (doc.getLength() < target)
+            doc.insertString(doc.getLength(), chunk, null);
+        long t1 = System.nanoTime();
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long retained = rt.totalMemory() - rt.freeMemory();
+
+        UndoManager undo = new UndoManager();
+        undo.setLimit(edits + 1);
+        doc.addUndoableEditListener(undo);
+        Random random = new Random(42);
+        for (int i = 0; i < edits; i++) {
+            int length = doc.getLength();
+            int offset = random.nextInt(length);
+            if (random.nextBoolean())
+                doc.insertString(offset, "edit " + i + (i % 10 == 0 ? "\n" : ""), null);
+            else
+                doc.remove(offset, Math.min(1 + random.nextInt(20), length - offset));
+        }
+        long t2 = System.nanoTime();
+        while (undo.canUndo())
+            undo.undo();
+        long t3 = System.nanoTime();
+
+        System.out.printf("%-18s load %6d ms, heap %5d MB | %d random edits %6d ms (%.1f us/edit) | undo all %6d ms%n",
+                name, (t1 - t0) / 1000000, retained >> 20, edits, (t2 - t1) / 1000000,
+                (t2 - t1) / 1000.0 / edits, (t3 - t2) / 1000000);
+    }
+
+    // Text with 80-column lines, like a typical log file
+    private static String makeChunk(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        Random random = new Random(1);
+        while (sb.length() < size) {
+            int lineLength = 20 + random.nextInt(60);
+            for (int i = 0; i < lineLength; i++)
+                sb.append(i % 7 == 6 ? ' ' : (char) ('a' + random.nextInt(26)));
+            sb.append('\n');
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+}
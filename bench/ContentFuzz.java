@@ -0,0 +1,200 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.GapContent;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.undo.UndoManager;
+
+/**
+ * Checks PieceTableContent against Swing's GapContent on random edits.
+ *
+ * Each seed applies the same random inserts, removes, undos and redos to a
+ * PlainDocument over each content, creating Positions along the way. After
+ * every step the text and the line elements must match GapContent's. The
+ * Positions are checked against a model of how they should move instead,
+ * since GapContent lets positions at one offset share a mark and so moves
+ * some of them with an undo that predates them. In the model, an edit moves
+ * the positions after it, and undoing or redoing a removal puts back only
+ * the positions that were inside it when it was removed.
+ *
+ * Run from the repository root:
+ *   javac -d out *.java bench/ContentFuzz.java
+ *   java -cp out ContentFuzz [seeds] [steps]
+ */
+public class ContentFuzz {
+    private static final String[] TEXT = { "a", "bc", "\n", "line\n", "x\ny\n", "é", "中文" };
+
+    private final Random random;
+    private final PlainDocument expected = new PlainDocument(new GapContent());
+    private final PlainDocument actual = new PlainDocument(new PieceTableContent());
+    private final UndoManager expectedUndo = new UndoManager();
+    private final UndoManager actualUndo = new UndoManager();
+    private final List<Position> positions = new ArrayList<>();
+    // Where each of positions should be, and the edits that can be undone and redone on them
+    private final List<int[]> model = new ArrayList<>();
+    private final Deque<ModelEdit> done = new ArrayDeque<>();
+    private final Deque<ModelEdit> undone = new ArrayDeque<>();
+
+    private ContentFuzz(int seed) {
+        random = new Random(seed);
+        expectedUndo.setLimit(-1);
+        actualUndo.setLimit(-1);
+        expected.addUndoableEditListener(expectedUndo);
+        actual.addUndoableEditListener(actualUndo);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        for (int seed = 0; seed < seeds; seed++) {
+            String failure = new ContentFuzz(seed).run(steps);
+            if (failure != null) {
+                System.out.println("seed " + seed + " " + failure);
+                System.exit(1);
+            }
+        }
+        System.out.println(seeds + " seeds of " + steps + " steps: PieceTableContent matches");
+    }
+
+    // Method to run the seed, returning what differed first, or null
+    private String run(int steps) throws BadLocationException {
+        for (int step = 0; step < steps; step++) {
+            int length = expected.getLength();
+            String op;
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                case 2: {
+                    int offset = random.nextInt(length + 1);
+                    String text = TEXT[random.nextInt(TEXT.length)];
+                    op = "insert " + offset;
+                    expected.insertString(offset, text, null);
+                    actual.insertString(offset, text, null);
+                    edit(new ModelEdit(true, offset, text.length()));
+                    break;
+                }
+                case 3: {
+                    if (length == 0)
+                        continue;
+                    int offset = random.nextInt(length);
+                    int n = Math.min(length - offset, 1 + random.nextInt(8));
+                    op = "remove " + offset;
+                    expected.remove(offset, n);
+                    actual.remove(offset, n);
+                    edit(new ModelEdit(false, offset, n));
+                    break;
+                }
+                case 4: {
+                    if (!expectedUndo.canUndo())
+                        continue;
+                    op = "undo";
+                    expectedUndo.undo();
+                    actualUndo.undo();
+                    ModelEdit edit = done.pop();
+                    edit.apply(!edit.insert);
+                    undone.push(edit);
+                    break;
+                }
+                case 5: {
+                    if (!expectedUndo.canRedo())
+                        continue;
+                    op = "redo";
+                    expectedUndo.redo();
+                    actualUndo.redo();
+                    ModelEdit edit = undone.pop();
+                    edit.apply(edit.insert);
+                    done.push(edit);
+                    break;
+                }
+                default: {
+                    int offset = random.nextInt(length + 1);
+                    op = "position " + offset;
+                    positions.add(actual.createPosition(offset));
+                    model.add(new int[] { offset });
+                    break;
+                }
+            }
+            String difference = compare();
+            if (difference != null)
+                return "step " + step + " (" + op + "): " + difference;
+        }
+        return null;
+    }
+
+    private void edit(ModelEdit edit) {
+        edit.apply(edit.insert);
+        done.push(edit);
+        undone.clear();
+    }
+
+    private String compare() throws BadLocationException {
+        if (!expected.getText(0, expected.getLength()).equals(actual.getText(0, actual.getLength())))
+            return "text differs";
+        Element expectedRoot = expected.getDefaultRootElement();
+        Element actualRoot = actual.getDefaultRootElement();
+        if (expectedRoot.getElementCount() != actualRoot.getElementCount())
+            return "lines " + expectedRoot.getElementCount() + " vs " + actualRoot.getElementCount();
+        for (int i = 0; i < expectedRoot.getElementCount(); i++) {
+            Element e = expectedRoot.getElement(i);
+            Element a = actualRoot.getElement(i);
+            if (e.getStartOffset() != a.getStartOffset() || e.getEndOffset() != a.getEndOffset())
+                return "line " + i + " " + e.getStartOffset() + "-" + e.getEndOffset() + " vs " + a.getStartOffset()
+                        + "-" + a.getEndOffset();
+        }
+        for (int i = 0; i < positions.size(); i++) {
+            if (positions.get(i).getOffset() != model.get(i)[0])
+                return "position " + i + " at " + positions.get(i).getOffset() + ", expected " + model.get(i)[0];
+        }
+        return null;
+    }
+
+    // An insert or removal of n characters at offset, as the model's positions see it
+    private final class ModelEdit {
+        final boolean insert;
+        final int offset, n;
+        // The positions inside the text while it is removed, and where they were relative to its start
+        List<int[]> captured;
+        int[] relative;
+
+        ModelEdit(boolean insert, int offset, int n) {
+            this.insert = insert;
+            this.offset = offset;
+            this.n = n;
+        }
+
+        // Method to insert the text if insert is true, or else remove it
+        void apply(boolean insert) {
+            if (insert) {
+                for (int[] position : model) {
+                    if (position[0] > offset || (position[0] == offset && offset != 0))
+                        position[0] += n;
+                }
+                if (captured != null) {
+                    for (int i = 0; i < captured.size(); i++)
+                        captured.get(i)[0] = offset + relative[i];
+                    captured = null;
+                }
+            } else {
+                captured = new ArrayList<>();
+                for (int[] position : model) {
+                    if (position[0] >= offset && position[0] <= offset + n)
+                        captured.add(position);
+                }
+                relative = new int[captured.size()];
+                for (int i = 0; i < relative.length; i++)
+                    relative[i] = captured.get(i)[0] - offset;
+                for (int[] position : model) {
+                    if (position[0] > offset + n)
+                        position[0] -= n;
+                    else if (position[0] > offset)
+                        position[0] = offset;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,386 @@
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.AWTEventListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+import javax.swing.text.Document;
+
+/**
+ * Replays recorded editing sessions into a real Notepad window and measures
+ * how long each input event takes to show on screen.
+ *
+ * Every event is dispatched to the text area on the EDT, so it goes through
+ * the key bindings and the listeners wired up in setupEventListeners() just as
+ * typed input does. Its latency runs from the start of the dispatch to the end
+ * of the last repaint it caused, so listener work, layout and painting all
+ * count; the status bar, refreshed on a timer, and highlighting done in the
+ * background do not. The latencies of each session are printed as a
+ * histogram and checked against bench/replay/baselines.properties: a session
+ * fails if its p50 or p99 is more than the tolerance above its baseline.
+ *
+ * A display is needed; on a machine without one, run it under Xvfb.
+ * Run from the repository root:
+ *   javac -d out *.java bench/Workloads.java bench/ReplayHarness.java
+ *   xvfb-run java -cp out ReplayHarness [session files]
+ *   xvfb-run java -cp out -Dreplay.update=true ReplayHarness   (rewrites the baselines)
+ *   java -cp out ReplayHarness -record my.session               (records what you type)
+ *
+ * Session files hold one command per line, with "# comments":
+ *   document 1MB [ascii|multilingual] [lines|single-line]   replaces the text, untimed
+ *   caret start|middle|end                                   moves the caret, untimed
+ *   type some text                                           one key press per character
+ *   key [ctrl] [shift] [alt] NAME [xN]                       a KeyEvent.VK_ key, N times
+ *   scroll ROWS [xN]                                         a mouse wheel turn, down if positive
+ *   paste 4KB [xN]                                           pastes that much text with Ctrl+V
+ */
+public class ReplayHarness {
+    private static final File SESSIONS = new File("bench/replay");
+    private static final File BASELINES = new File(SESSIONS, "baselines.properties");
+    // How far above its baseline a session may be before it fails, as a fraction
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("replay.tolerance", "0.5"));
+    // Untimed passes over each session before the measured one, to warm up the JIT
+    private static final int WARMUP = Integer.getInteger("replay.warmup", 2);
+
+    private final Notepad notepad;
+    private final PaintClock clock = new PaintClock();
+    private LatencyHistogram histogram;
+
+    private ReplayHarness(Notepad notepad) {
+        this.notepad = notepad;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("-record")) {
+            record(new File(args[1]));
+            return;
+        }
+        List<File> sessions = new ArrayList<>();
+        for (String arg : args)
+            sessions.add(new File(arg));
+        if (sessions.isEmpty()) {
+            File[] found = SESSIONS.listFiles((dir, name) -> name.endsWith(".session"));
+            for (File file : found != null ? found : new File[0])
+                sessions.add(file);
+            sessions.sort(null);
+        }
+
+        Notepad[] created = new Notepad[1];
+        SwingUtilities.invokeAndWait(() -> {
+            created[0] = new Notepad();
+            created[0].setVisible(true);
+        });
+        ReplayHarness harness = new ReplayHarness(created[0]);
+        SwingUtilities.invokeAndWait(() -> RepaintManager.setCurrentManager(harness.clock));
+
+        Properties baselines = new Properties();
+        if (BASELINES.exists()) {
+            try (InputStream in = new FileInputStream(BASELINES)) {
+                baselines.load(in);
+            }
+        }
+        boolean update = Boolean.getBoolean("replay.update");
+        boolean failed = false;
+        for (File session : sessions) {
+            String name = session.getName().replaceFirst("\\.session$", "");
+            List<String> commands = Files.readAllLines(session.toPath(), StandardCharsets.UTF_8);
+            for (int i = 0; i < WARMUP; i++)
+                harness.replay(commands);
+            LatencyHistogram measured = harness.replay(commands);
+            System.out.println(name + ": " + measured.summary());
+            printBars(measured);
+            if (update) {
+                baselines.setProperty(name + ".p50", Long.toString(measured.getPercentile(0.5) / 1000));
+                baselines.setProperty(name + ".p99", Long.toString(measured.getPercentile(0.99) / 1000));
+            } else {
+                failed |= !check(baselines, name, "p50", measured.getPercentile(0.5));
+                failed |= !check(baselines, name, "p99", measured.getPercentile(0.99));
+            }
+        }
+        if (update) {
+            try (OutputStream out = new FileOutputStream(BASELINES)) {
+                baselines.store(out, "Replay latencies in microseconds, from -Dreplay.update=true");
+            }
+        }
+
+        SwingUtilities.invokeAndWait(() -> {
+            // The replayed edits are not worth recovering
+            for (Buffer open : harness.notepad.tabs.getBuffers()) {
+                open.journal.detach();
+                open.journal.close();
+            }
+            harness.notepad.dispose();
+        });
+        System.exit(failed ? 1 : 0);
+    }
+
+    // Method to compare a percentile in nanoseconds with its baseline in microseconds, reporting a regression
+    private static boolean check(Properties baselines, String session, String percentile, long nanos) {
+        String baseline = baselines.getProperty(session + "." + percentile);
+        if (baseline == null) {
+            System.out.println("  " + percentile + ": no baseline");
+            return true;
+        }
+        long limit = (long) (Long.parseLong(baseline) * 1000 * (1 + TOLERANCE));
+        boolean passed = nanos <= limit;
+        System.out.printf("  %s: %.2f ms against a baseline of %.2f ms: %s%n", percentile, nanos / 1e6,
+                Long.parseLong(baseline) / 1e3, passed ? "pass" : "FAIL");
+        return passed;
+    }
+
+    // Method to print the histogram as bars, one per power of two of milliseconds
+    private static void printBars(LatencyHistogram histogram) {
+        long[] bounds = { 250_000, 500_000, 1_000_000, 2_000_000, 4_000_000, 8_000_000, 16_000_000, 32_000_000,
+                64_000_000, Long.MAX_VALUE };
+        long below = 0;
+        double previous = 0;
+        for (long bound : bounds) {
+            long atOrBelow = histogram.getCountAtOrBelow(bound);
+            long n = atOrBelow - below;
+            below = atOrBelow;
+            String label = bound == Long.MAX_VALUE ? String.format(">%6.2f", previous)
+                    : String.format("<=%5.2f", bound / 1e6);
+            previous = bound / 1e6;
+            if (n > 0) {
+                int width = (int) Math.ceil(50.0 * n / histogram.getCount());
+                System.out.printf("  %s ms %7d %s%n", label, n, "#".repeat(width));
+            }
+        }
+    }
+
+    // Method to run every command of a session, returning the latencies of its input events
+    private LatencyHistogram replay(List<String> commands) throws Exception {
+        histogram = new LatencyHistogram();
+        for (String line : commands) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] words = line.split(" +");
+            int times = 1;
+            if (words.length > 1 && words[words.length - 1].matches("x\\d+")) {
+                times = Integer.parseInt(words[words.length - 1].substring(1));
+                line = line.substring(0, line.lastIndexOf(' ')).strip();
+                words = line.split(" +");
+            }
+            for (int i = 0; i < times; i++)
+                run(line, words);
+        }
+        return histogram;
+    }
+
+    private void run(String line, String[] words) throws Exception {
+        switch (words[0]) {
+        case "document":
+            boolean multilingual = words.length > 2 && words[2].equals("multilingual");
+            boolean singleLine = words.length > 3 && words[3].equals("single-line");
+            Document doc = Workloads.document(Workloads.text(parseSize(words[1]), multilingual, singleLine));
+            SwingUtilities.invokeAndWait(() -> notepad.buffer.setDocument(doc));
+            settle();
+            break;
+        case "caret":
+            SwingUtilities.invokeAndWait(() -> {
+                int length = notepad.textarea.getDocument().getLength();
+                notepad.textarea.setCaretPosition(
+                        words[1].equals("start") ? 0 : words[1].equals("middle") ? length / 2 : length);
+            });
+            settle();
+            break;
+        case "type":
+            for (char c : line.substring(5).toCharArray()) {
+                int code = KeyEvent.getExtendedKeyCodeForChar(c);
+                measure(key(KeyEvent.KEY_PRESSED, code, 0, c), key(KeyEvent.KEY_TYPED, KeyEvent.VK_UNDEFINED, 0, c),
+                        key(KeyEvent.KEY_RELEASED, code, 0, c));
+            }
+            break;
+        case "key":
+            int modifiers = 0;
+            for (int i = 1; i < words.length - 1; i++)
+                modifiers |= words[i].equals("ctrl") ? InputEvent.CTRL_DOWN_MASK
+                        : words[i].equals("shift") ? InputEvent.SHIFT_DOWN_MASK
+                        : words[i].equals("alt") ? InputEvent.ALT_DOWN_MASK : 0;
+            int code = KeyEvent.class.getField("VK_" + words[words.length - 1]).getInt(null);
+            measure(key(KeyEvent.KEY_PRESSED, code, modifiers, KeyEvent.CHAR_UNDEFINED),
+                    key(KeyEvent.KEY_RELEASED, code, modifiers, KeyEvent.CHAR_UNDEFINED));
+            break;
+        case "scroll":
+            int rows = Integer.parseInt(words[1]);
+            measure(new MouseWheelEvent(notepad.textarea, MouseWheelEvent.MOUSE_WHEEL, System.currentTimeMillis(), 0,
+                    10, 10, 0, false, MouseWheelEvent.WHEEL_UNIT_SCROLL, Math.abs(rows), Integer.signum(rows)));
+            break;
+        case "paste":
+            String text = Workloads.text(parseSize(words[1]), false, false);
+            SwingUtilities.invokeAndWait(() -> Toolkit.getDefaultToolkit().getSystemClipboard()
+                    .setContents(new StringSelection(text), null));
+            measure(key(KeyEvent.KEY_PRESSED, KeyEvent.VK_V, InputEvent.CTRL_DOWN_MASK, KeyEvent.CHAR_UNDEFINED),
+                    key(KeyEvent.KEY_RELEASED, KeyEvent.VK_V, InputEvent.CTRL_DOWN_MASK, KeyEvent.CHAR_UNDEFINED));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown replay command: " + line);
+        }
+    }
+
+    private KeyEvent key(int id, int code, int modifiers, char c) {
+        return new KeyEvent(notepad.textarea, id, System.currentTimeMillis(), modifiers, code, c);
+    }
+
+    // Method to dispatch events as one input and record the time until the repaints they caused are done
+    private void measure(AWTEvent... events) throws Exception {
+        long[] start = new long[1];
+        SwingUtilities.invokeAndWait(() -> {
+            clock.painted = 0;
+            start[0] = System.nanoTime();
+            for (AWTEvent event : events)
+                notepad.textarea.dispatchEvent(event);
+            clock.dispatched = System.nanoTime();
+        });
+        settle();
+        histogram.record(Math.max(clock.painted, clock.dispatched) - start[0]);
+    }
+
+    // Method to wait until the events queued so far have run and nothing is left to repaint
+    private void settle() throws Exception {
+        do {
+            SwingUtilities.invokeAndWait(() -> {
+            });
+        } while (clock.dirty);
+    }
+
+    // Notes when painting is asked for and when the last paint finished
+    private static final class PaintClock extends RepaintManager {
+        volatile boolean dirty;
+        volatile long painted, dispatched;
+
+        @Override
+        public void addDirtyRegion(JComponent c, int x, int y, int w, int h) {
+            dirty = true;
+            super.addDirtyRegion(c, x, y, w, h);
+        }
+
+        @Override
+        public void paintDirtyRegions() {
+            dirty = false;
+            super.paintDirtyRegions();
+            painted = System.nanoTime();
+        }
+    }
+
+    private static long parseSize(String size) {
+        if (size.endsWith("MB"))
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        if (size.endsWith("KB"))
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024;
+        return Long.parseLong(size);
+    }
+
+    // Method to open Notepad as usual and write what is typed into it to file as a session, when it is closed
+    private static void record(File file) throws Exception {
+        Map<Integer, String> keyNames = new HashMap<>();
+        for (Field field : KeyEvent.class.getFields()) {
+            if (field.getName().startsWith("VK_") && Modifier.isStatic(field.getModifiers()))
+                keyNames.putIfAbsent(field.getInt(null), field.getName().substring(3));
+        }
+        Recorder recorder = new Recorder(keyNames);
+        SwingUtilities.invokeAndWait(() -> {
+            Notepad notepad = new Notepad();
+            recorder.textarea = notepad.textarea;
+            Toolkit.getDefaultToolkit().addAWTEventListener(recorder,
+                    AWTEvent.KEY_EVENT_MASK | AWTEvent.MOUSE_WHEEL_EVENT_MASK);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> recorder.write(file)));
+            notepad.setVisible(true);
+        });
+    }
+
+    // Turns the text area's input into session commands
+    private static final class Recorder implements AWTEventListener {
+        private final Map<Integer, String> keyNames;
+        private final List<String> commands = new ArrayList<>();
+        private final StringBuilder typed = new StringBuilder();
+        Object textarea;
+
+        Recorder(Map<Integer, String> keyNames) {
+            this.keyNames = keyNames;
+        }
+
+        @Override
+        public void eventDispatched(AWTEvent event) {
+            if (event.getSource() != textarea)
+                return;
+            if (event instanceof MouseWheelEvent) {
+                flush();
+                add("scroll " + ((MouseWheelEvent) event).getWheelRotation());
+                return;
+            }
+            KeyEvent e = (KeyEvent) event;
+            boolean shortcut = e.isControlDown() || e.isAltDown() || e.isMetaDown();
+            char c = e.getKeyChar();
+            if (e.getID() == KeyEvent.KEY_TYPED && !shortcut && c >= 0x20 && c != 0x7F) {
+                typed.append(c);
+            } else if (e.getID() == KeyEvent.KEY_PRESSED
+                    && (shortcut || c == KeyEvent.CHAR_UNDEFINED || c < 0x20 || c == 0x7F)) {
+                int code = e.getKeyCode();
+                if (code == KeyEvent.VK_SHIFT || code == KeyEvent.VK_CONTROL || code == KeyEvent.VK_ALT
+                        || code == KeyEvent.VK_META || !keyNames.containsKey(code))
+                    return;
+                flush();
+                add("key " + (e.isControlDown() ? "ctrl " : "") + (e.isShiftDown() ? "shift " : "")
+                        + (e.isAltDown() ? "alt " : "") + keyNames.get(code));
+            }
+        }
+
+        // Method to add a command, folding repeats of the one before into an xN count
+        private void add(String command) {
+            int last = commands.size() - 1;
+            if (last >= 0) {
+                String previous = commands.get(last);
+                int times = 1;
+                if (previous.matches(".* x\\d+")) {
+                    times = Integer.parseInt(previous.substring(previous.lastIndexOf(" x") + 2));
+                    previous = previous.substring(0, previous.lastIndexOf(" x"));
+                }
+                if (previous.equals(command)) {
+                    commands.set(last, command + " x" + (times + 1));
+                    return;
+                }
+            }
+            commands.add(command);
+        }
+
+        private void flush() {
+            if (typed.length() > 0)
+                commands.add("type " + typed);
+            typed.setLength(0);
+        }
+
+        synchronized void write(File file) {
+            flush();
+            try (PrintStream out = new PrintStream(file, StandardCharsets.UTF_8)) {
+                out.println("# Recorded " + new Date());
+                for (String command : commands)
+                    out.println(command);
+            } catch (IOException e) {
+                System.err.println("Error writing session!");
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+/**
+ * Checks that UndoHistory can undo everything and redo it again once old
+ * steps have been spilled to disk.
+ *
+ * Each seed makes random edits to an EditorDocument under a small undo
+ * budget, so that most of the history is spilled, then undoes every step
+ * and redoes every step, twice over. After each undo and redo the text must
+ * be what it was at that point before, and every line element must start
+ * where the text says that line starts. It stops at the first difference,
+ * naming the seed and step.
+ *
+ * Run from the repository root:
+ *   javac -d out *.java bench/UndoRoundTrip.java
+ *   java -cp out UndoRoundTrip [seeds] [edits]
+ */
+public class UndoRoundTrip {
+    private static final String[] TEXT = { "a", "b", " ", "\n", "word ", "line\n", "x\ny\nz", "é中" };
+
+    public static void main(String[] args) throws Exception {
+        // Small enough that all but the last few steps are spilled
+        if (System.getProperty("notepad.undoBudget") == null)
+            System.setProperty("notepad.undoBudget", "300");
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        for (int seed = 0; seed < seeds; seed++) {
+            String failure = run(seed, edits);
+            if (failure != null) {
+                System.out.println("seed " + seed + " " + failure);
+                System.exit(1);
+            }
+        }
+        System.out.println(seeds + " seeds of " + edits + " edits: undo and redo round-trip");
+    }
+
+    // Method to run one seed, returning what differed first, or null
+    private static String run(int seed, int edits) throws BadLocationException {
+        Random random = new Random(seed);
+        EditorDocument doc = new EditorDocument();
+        UndoHistory history = new UndoHistory();
+        doc.addUndoableEditListener(history);
+        for (int i = 0; i < edits; i++) {
+            int length = doc.getLength();
+            if (length > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(length);
+                doc.remove(offset, Math.min(length - offset, 1 + random.nextInt(40)));
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (int n = random.nextInt(4) == 0 ? 20 : 1; n > 0; n--)
+                    text.append(TEXT[random.nextInt(TEXT.length)]);
+                doc.insertString(random.nextInt(length + 1), text.toString(), null);
+            }
+        }
+
+        // The text after each step, from the last back to the start
+        List<String> states = new ArrayList<>();
+        states.add(text(doc));
+        int undos = 0;
+        while (history.canUndo()) {
+            history.undo();
+            undos++;
+            states.add(text(doc));
+            String difference = checkLines(doc);
+            if (difference != null)
+                return "undo " + undos + ": " + difference;
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = undos - 1; i >= 0; i--) {
+                if (!history.canRedo())
+                    return "round " + round + " cannot redo step " + (undos - i);
+                history.redo();
+                String difference = compare(doc, states.get(i));
+                if (difference != null)
+                    return "round " + round + " redo " + (undos - i) + ": " + difference;
+            }
+            for (int i = 1; i <= undos; i++) {
+                if (!history.canUndo())
+                    return "round " + round + " cannot undo step " + i;
+                history.undo();
+                String difference = compare(doc, states.get(i));
+                if (difference != null)
+                    return "round " + round + " undo " + i + ": " + difference;
+            }
+        }
+        return null;
+    }
+
+    private static String compare(EditorDocument doc, String expected) throws BadLocationException {
+        if (!text(doc).equals(expected))
+            return "text differs";
+        return checkLines(doc);
+    }
+
+    // Method to check every line element against the line breaks in the text
+    private static String checkLines(EditorDocument doc) throws BadLocationException {
+        String text = text(doc) + "\n";
+        Element root = doc.getDefaultRootElement();
+        int start = 0;
+        for (int line = 0; line < root.getElementCount(); line++) {
+            Element element = root.getElement(line);
+            int end = text.indexOf('\n', start) + 1;
+            if (end == 0)
+                return "line " + line + " of " + root.getElementCount() + " is past the last line break";
+            if (element.getStartOffset() != start || element.getEndOffset() != end)
+                return "line " + line + " start " + element.getStartOffset() + " vs " + start;
+            start = end;
+        }
+        if (start != text.length())
+            return "lines end at " + start + " of " + text.length();
+        return null;
+    }
+
+    private static String text(EditorDocument doc) throws BadLocationException {
+        return doc.getText(0, doc.getLength());
+    }
+}
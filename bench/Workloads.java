@@ -0,0 +1,184 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/**
+ * The editor's hot paths, packaged for the JMH benchmarks in bench/jmh.
+ *
+ * JMH cannot generate code for classes in the default package, so the
+ * benchmarks live in a package of their own and reach the editor through
+ * this class, by reflection, once per trial. Everything it hands out is typed
+ * with JDK interfaces, so the measured calls themselves are direct.
+ *
+ * Each workload runs the same classes the UI actions use, without a window:
+ * DocumentCounter and the caret line lookup for TaActionListener's status
+ * updates, SearchEngine for FindReplaceDialog's find and replace all, and
+ * FileLoader and FileSaver for FileActionListener's open and save.
+ */
+public final class Workloads {
+    // Appears about once every thousand words, as the text searched for
+    public static final String NEEDLE = "needle";
+
+    private static final String[] ASCII_WORDS = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+            "lorem", "ipsum", "dolor", "sit", "amet", "editor", "piece", "table", "buffer", "search" };
+    private static final String[] MULTILINGUAL_WORDS = { "the", "editor", "Straße", "naïve", "façade", "привет",
+            "мир", "γειά", "κόσμε", "こんにちは", "世界", "안녕", "مرحبا", "שלום", "😀", "🚀", "café", "日本語" };
+
+    private Workloads() {
+    }
+
+    // Method to generate size characters of text: ASCII or mixed scripts, in short lines or a single line
+    public static String text(long size, boolean multilingual, boolean singleLine) {
+        String[] words = multilingual ? MULTILINGUAL_WORDS : ASCII_WORDS;
+        StringBuilder sb = new StringBuilder((int) size + 16);
+        Random random = new Random(42);
+        int column = 0;
+        while (sb.length() < size) {
+            String word = random.nextInt(1000) == 0 ? NEEDLE : words[random.nextInt(words.length)];
+            sb.append(word);
+            column += word.length() + 1;
+            if (!singleLine && column > 40 + random.nextInt(60)) {
+                sb.append('\n');
+                column = 0;
+            } else {
+                sb.append(' ');
+            }
+        }
+        sb.setLength((int) size);
+        if (Character.isHighSurrogate(sb.charAt(sb.length() - 1)))
+            sb.setCharAt(sb.length() - 1, ' ');
+        return sb.toString();
+    }
+
+    // Method to build a document the way FileLoader fills one, in large appends
+    public static Document document(String text) {
+        EditorDocument doc = new EditorDocument();
+        try {
+            for (int i = 0; i < text.length(); i += 4 * 1024 * 1024)
+                doc.insertString(doc.getLength(), text.substring(i, Math.min(text.length(), i + 4 * 1024 * 1024)),
+                        null);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        return doc;
+    }
+
+    // Method to type and delete a character in the middle of doc, updating the counts and caret position the
+    // status bar shows; returns the line the caret is on
+    public static IntSupplier typing(Document doc) {
+        DocumentCounter counter = new DocumentCounter();
+        counter.install(doc);
+        int offset = doc.getLength() / 2;
+        boolean[] typed = { false };
+        return () -> {
+            try {
+                if (typed[0])
+                    doc.remove(offset, 1);
+                else
+                    doc.insertString(offset, "x", null);
+                typed[0] = !typed[0];
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            Element root = doc.getDefaultRootElement();
+            int line = root.getElementIndex(offset);
+            int column = offset - root.getElement(line).getStartOffset();
+            return counter.getCharCount() + counter.getWordCount() + line + column;
+        };
+    }
+
+    // Method to find the next match after the previous one, wrapping around like Find does
+    public static IntSupplier findNext(Document doc, String query) {
+        SearchEngine engine = new SearchEngine(query, false, false);
+        int[] from = { 0 };
+        return () -> {
+            try {
+                int hit = engine.find(doc, Math.min(from[0], doc.getLength()));
+                if (hit == -1)
+                    hit = engine.find(doc, 0);
+                from[0] = hit + 1;
+                return hit;
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    // Method to replace every match as one edit, the way Replace All builds its text; each call swaps the case of
+    // the matches, so the document keeps its size
+    public static IntSupplier replaceAll(Document doc, String query) {
+        SearchEngine lower = new SearchEngine(query.toLowerCase(), true, false);
+        SearchEngine upper = new SearchEngine(query.toUpperCase(), true, false);
+        boolean[] raised = { false };
+        return () -> {
+            SearchEngine engine = raised[0] ? upper : lower;
+            String replacement = raised[0] ? query.toLowerCase() : query.toUpperCase();
+            raised[0] = !raised[0];
+            PieceTableContent.Snapshot text = ((EditorDocument) doc).snapshot();
+            StringBuilder result = new StringBuilder();
+            int start = -1, pos = 0, hit, count = 0;
+            while ((hit = engine.find(text, pos)) != -1) {
+                if (start < 0)
+                    start = hit;
+                else
+                    result.append(text, pos, hit);
+                result.append(replacement);
+                pos = hit + engine.length();
+                count++;
+            }
+            if (start >= 0) {
+                try {
+                    ((EditorDocument) doc).replace(start, pos - start, result.toString(), null);
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return count;
+        };
+    }
+
+    // Method to open file into a new document the way Open does; returns its length
+    public static IntSupplier open(File file) {
+        return () -> {
+            EditorDocument doc = new EditorDocument();
+            try {
+                new FileLoader(null, file, StandardCharsets.UTF_8).readInto(doc);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return doc.getLength();
+        };
+    }
+
+    // Method to save doc to file the way Save does. With delta set, the file is saved once and marked clean, and
+    // one small edit is made, so each save writes just the changed bytes when the file is large enough for it.
+    public static IntSupplier save(Document doc, File file, boolean delta) {
+        EditorDocument editor = (EditorDocument) doc;
+        editor.putProperty(FileLoader.CHARSET_PROPERTY, StandardCharsets.UTF_8);
+        if (delta) {
+            saveOnce(editor, file);
+            boolean ascii = editor.snapshot().chars().allMatch(c -> c < 0x80);
+            editor.getChangeTracker().markClean(file, StandardCharsets.UTF_8, "\n", ascii);
+            try {
+                editor.replace(editor.getLength() / 2, 1, "#", null);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return () -> (int) saveOnce(editor, file);
+    }
+
+    private static long saveOnce(EditorDocument doc, File file) {
+        try {
+            return new FileSaver(null, doc, file).doInBackground();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package bench.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the editor's hot paths: the status bar update after a
+ * keystroke, Find Next, Replace All, Open and Save.
+ *
+ * Every benchmark runs against generated text of each size, in ASCII and in a
+ * mix of scripts with surrogate pairs, laid out in short lines or as a single
+ * long line. Throughput and sampled latency, with its percentiles, are both
+ * reported; add -prof gc for the allocation rate.
+ *
+ * Run from the repository root:
+ *   mvn -f bench/pom.xml package
+ *   java -jar bench/target/benchmarks.jar -prof gc
+ *   java -jar bench/target/benchmarks.jar find -p size=1MB,64MB -p script=ascii
+ *
+ * The editor's classes are in the default package, which JMH cannot generate
+ * code for, so the workloads are built by bench/Workloads.java and fetched
+ * here by reflection during setup.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class EditorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Text {
+        @Param({ "1KB", "1MB", "64MB", "500MB" })
+        public String size;
+
+        @Param({ "ascii", "multilingual" })
+        public String script;
+
+        @Param({ "lines", "single-line" })
+        public String shape;
+
+        String text;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            text = (String) workload("text", parseSize(size), script.equals("multilingual"),
+                    shape.equals("single-line"));
+        }
+
+        Object document() {
+            return workload("document", text);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Typing {
+        IntSupplier keystroke;
+
+        @Setup(Level.Trial)
+        public void setUp(Text text) {
+            keystroke = (IntSupplier) workload("typing", text.document());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Find {
+        IntSupplier findNext;
+
+        @Setup(Level.Trial)
+        public void setUp(Text text) {
+            findNext = (IntSupplier) workload("findNext", text.document(), needle());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReplaceAll {
+        IntSupplier replaceAll;
+
+        @Setup(Level.Trial)
+        public void setUp(Text text) {
+            replaceAll = (IntSupplier) workload("replaceAll", text.document(), needle());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Open {
+        File file;
+        IntSupplier open;
+
+        @Setup(Level.Trial)
+        public void setUp(Text text) throws IOException {
+            file = File.createTempFile("notepad-open", ".txt");
+            Files.writeString(file.toPath(), text.text, StandardCharsets.UTF_8);
+            open = (IntSupplier) workload("open", file);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Save {
+        // Whether each save follows a single small edit to a clean document, rather than rewriting it all
+        @Param({ "false", "true" })
+        public boolean delta;
+
+        File file;
+        IntSupplier save;
+
+        @Setup(Level.Trial)
+        public void setUp(Text text) throws IOException {
+            file = File.createTempFile("notepad-save", ".txt");
+            save = (IntSupplier) workload("save", text.document(), file, delta);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public int typeAndUpdateStatus(Typing state) {
+        return state.keystroke.getAsInt();
+    }
+
+    @Benchmark
+    public int findNext(Find state) {
+        return state.findNext.getAsInt();
+    }
+
+    @Benchmark
+    public int replaceAll(ReplaceAll state) {
+        return state.replaceAll.getAsInt();
+    }
+
+    @Benchmark
+    public int open(Open state) {
+        return state.open.getAsInt();
+    }
+
+    @Benchmark
+    public int save(Save state) {
+        return state.save.getAsInt();
+    }
+
+    static long parseSize(String size) {
+        if (size.endsWith("MB"))
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        if (size.endsWith("KB"))
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024;
+        return Long.parseLong(size);
+    }
+
+    static String needle() {
+        try {
+            return (String) Class.forName("Workloads").getField("NEEDLE").get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Method to call the Workloads method of the given name
+    static Object workload(String name, Object... args) {
+        try {
+            for (Method method : Class.forName("Workloads").getMethods()) {
+                if (method.getName().equals(name))
+                    return method.invoke(null, args);
+            }
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalArgumentException("No workload " + name);
+    }
+}